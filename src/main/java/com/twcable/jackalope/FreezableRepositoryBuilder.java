@@ -0,0 +1,34 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope;
+
+/**
+ * A {@link RepositoryBuilder} that can build its repository once and hand out copies of it.
+ */
+public interface FreezableRepositoryBuilder extends RepositoryBuilder {
+    /**
+     * Builds the repository once and returns a builder for copies of it.
+     * <p/>
+     * Every build() of the returned builder creates an independent repository with the same content, without
+     * replaying the node and property builders: the copies share the content until they change it, so building one
+     * is O(1) no matter how large the repository is.  This makes it cheap to build a fixture once per specification
+     * and hand a fresh repository to every feature method.
+     *
+     * @return A builder for copies of the repository
+     */
+    public FreezableRepositoryBuilder freeze();
+}
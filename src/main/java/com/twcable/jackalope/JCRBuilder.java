@@ -20,6 +20,7 @@ import com.google.common.base.Strings;
 import com.twcable.jackalope.impl.common.Values;
 import com.twcable.jackalope.impl.jcr.NodeImpl;
 import com.twcable.jackalope.impl.jcr.SessionImpl;
+import com.twcable.jackalope.impl.jcr.Snapshot;
 import com.twcable.jackalope.impl.sling.NodeResourceImpl;
 import com.twcable.jackalope.impl.sling.ResourceResolverImpl;
 import com.twcable.jackalope.impl.sling.SimpleResourceResolverFactory;
@@ -47,7 +48,7 @@ public class JCRBuilder {
 
 
     @Nonnull
-    public static RepositoryBuilder repository(NodeBuilder... nodeBuilders) {
+    public static FreezableRepositoryBuilder repository(NodeBuilder... nodeBuilders) {
         return new RepositoryBuilderImpl(nodeBuilders);
     }
 
@@ -137,7 +138,7 @@ public class JCRBuilder {
     // **********************************************************************
 
 
-    static class RepositoryBuilderImpl implements RepositoryBuilder {
+    static class RepositoryBuilderImpl implements FreezableRepositoryBuilder {
         NodeBuilder[] nodeBuilders;
 
 
@@ -146,7 +147,7 @@ public class JCRBuilder {
         }
 
 
-        public SlingRepository build() {
+        public SlingRepositoryImpl build() {
             SlingRepositoryImpl repository = new SlingRepositoryImpl();
             try {
                 for (NodeBuilder nodeBuilder : nodeBuilders)
@@ -157,6 +158,35 @@ public class JCRBuilder {
             }
             return repository;
         }
+
+
+        public FreezableRepositoryBuilder freeze() {
+            return new FrozenRepositoryBuilderImpl(build().snapshot());
+        }
+    }
+
+    static class FrozenRepositoryBuilderImpl implements FreezableRepositoryBuilder {
+        private final Snapshot snapshot;
+
+
+        FrozenRepositoryBuilderImpl(Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+
+        /**
+         * Creates a copy of the frozen repository.
+         *
+         * @return the new repository
+         */
+        public SlingRepositoryImpl build() {
+            return new SlingRepositoryImpl(snapshot);
+        }
+
+
+        public FreezableRepositoryBuilder freeze() {
+            return this;
+        }
     }
 
     static class NodeBuilderImpl implements NodeBuilder {
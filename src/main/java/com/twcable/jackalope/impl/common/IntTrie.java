@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.common;
+
+import javax.annotation.Nullable;
+
+/**
+ * A persistent map from non-negative ints to values, stored as a 32-way trie.
+ * <p/>
+ * Tries are never changed by another holder: {@link #put(int, Object, Object)} copies the nodes on the path to the
+ * key and returns a new trie that shares everything else with the old one, so keeping a reference to a trie is an
+ * O(1) snapshot. To make bulk updates cheap, nodes that were created with the same (non-null) owner token are updated
+ * in place instead. Whoever hands a trie out must therefore stop using the owner token that it was built with.
+ *
+ * @param <V> The type of the values
+ */
+public final class IntTrie<V> {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final IntTrie<?> EMPTY = new IntTrie<>(new TrieNode(null), 0);
+
+    private final TrieNode root;
+    private final int shift;
+
+
+    private IntTrie(TrieNode root, int shift) {
+        this.root = root;
+        this.shift = shift;
+    }
+
+
+    /**
+     * Returns the empty trie.
+     *
+     * @param <V> The type of the values
+     * @return The empty trie
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> IntTrie<V> empty() {
+        return (IntTrie<V>)EMPTY;
+    }
+
+
+    /**
+     * Returns the value stored for the key.
+     *
+     * @param key The key
+     * @return The value, or null if there is no value for the key
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (key < 0 || !fits(key, shift)) return null;
+        TrieNode node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (TrieNode)node.slots[(key >>> level) & MASK];
+            if (node == null) return null;
+        }
+        return (V)node.slots[key & MASK];
+    }
+
+
+    /**
+     * Stores a value for the key.
+     *
+     * @param key   The key. Must not be negative.
+     * @param value The value, or null to remove the key
+     * @param owner The token of the caller. Nodes that were created with this token are updated in place; all others
+     *              are copied. Pass null to never update in place.
+     * @return The updated trie
+     */
+    public IntTrie<V> put(int key, @Nullable V value, @Nullable Object owner) {
+        if (key < 0) throw new IllegalArgumentException("Negative key: " + key);
+
+        TrieNode newRoot = root;
+        int newShift = shift;
+        while (!fits(key, newShift)) {
+            if (value == null) return this;
+            TrieNode grown = new TrieNode(owner);
+            grown.slots[0] = newRoot;
+            newRoot = grown;
+            newShift += BITS;
+        }
+
+        newRoot = newRoot.editable(owner);
+        TrieNode node = newRoot;
+        for (int level = newShift; level > 0; level -= BITS) {
+            int index = (key >>> level) & MASK;
+            TrieNode child = (TrieNode)node.slots[index];
+            if (child == null) {
+                if (value == null) return this;
+                child = new TrieNode(owner);
+            }
+            else {
+                child = child.editable(owner);
+            }
+            node.slots[index] = child;
+            node = child;
+        }
+        node.slots[key & MASK] = value;
+
+        return (newRoot == root && newShift == shift) ? this : new IntTrie<V>(newRoot, newShift);
+    }
+
+
+    private static boolean fits(int key, int shift) {
+        return shift + BITS >= 31 || (key >>> (shift + BITS)) == 0;
+    }
+
+
+    private static final class TrieNode {
+        private final Object owner;
+        private final Object[] slots;
+
+
+        private TrieNode(Object owner) {
+            this(owner, new Object[WIDTH]);
+        }
+
+
+        private TrieNode(Object owner, Object[] slots) {
+            this.owner = owner;
+            this.slots = slots;
+        }
+
+
+        private TrieNode editable(Object owner) {
+            return (owner != null && owner == this.owner) ? this : new TrieNode(owner, slots.clone());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.common;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out one shared instance for each group of equal objects, so that a value that is stored many times is only
+ * kept in memory once.
+ * <p/>
+ * The interner never holds more than its maximum number of instances: when it is full it forgets everything it holds
+ * and starts over, so that it keeps up with the values that are currently in use without ever growing past its bound.
+ * Objects that were handed out before that keep working, they are just no longer shared with new ones.
+ * <p/>
+ * The interner is safe to use from several threads.
+ *
+ * @param <T> The type of the objects. Must be immutable and implement equals and hashCode.
+ */
+public final class Interner<T> {
+    private final ConcurrentMap<T, T> instances = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+
+    /**
+     * @param maxSize The most instances the interner holds
+     */
+    public Interner(int maxSize) {
+        if (maxSize <= 0) throw new IllegalArgumentException("Max size must be positive: " + maxSize);
+        this.maxSize = maxSize;
+    }
+
+
+    /**
+     * Returns the shared instance that is equal to the object.
+     *
+     * @param object The object
+     * @return The shared instance, or the object itself if the interner did not hold an equal one yet
+     */
+    @Nullable
+    public T intern(@Nullable T object) {
+        if (object == null) return null;
+        T instance = instances.get(object);
+        if (instance != null) {
+            hits.incrementAndGet();
+            return instance;
+        }
+        misses.incrementAndGet();
+        if (instances.size() >= maxSize) instances.clear();
+        instance = instances.putIfAbsent(object, object);
+        return instance != null ? instance : object;
+    }
+
+
+    /**
+     * Returns the number of instances the interner currently holds.
+     */
+    public int size() {
+        return instances.size();
+    }
+
+
+    /**
+     * Returns the number of calls to {@link #intern(Object)} that returned a shared instance.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+
+    /**
+     * Returns the number of calls to {@link #intern(Object)} that did not find an equal instance.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+
+    /**
+     * Returns the share of the calls to {@link #intern(Object)} that returned a shared instance, between 0 and 1.
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0.0 : (double)hits / total;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.common;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A compiled JCR name pattern, as taken by Node.getNodes(String) and Node.getProperties(String): alternatives
+ * separated by "|", each of which is a name that may contain "*" wildcards.
+ * <p/>
+ * Compiled patterns are cached, so a pattern that is used over and over is only parsed once.  Alternatives without a
+ * wildcard are kept apart as exact names, so that they can be looked up directly instead of being matched against
+ * every name.
+ */
+public final class NamePattern {
+    private static final int MAX_CACHED = 1024;
+    private static final ConcurrentMap<Object, NamePattern> CACHE = new ConcurrentHashMap<>();
+
+    private final Set<String> names;
+    private final String[][] globs; // the wildcard alternatives, split at their wildcards
+
+
+    private NamePattern(List<String> alternatives) {
+        Set<String> names = new LinkedHashSet<>();
+        List<String[]> globs = new ArrayList<>();
+        for (String alternative : alternatives) {
+            if (alternative.indexOf('*') < 0)
+                names.add(alternative);
+            else
+                globs.add(alternative.split("\\*", -1));
+        }
+        this.names = Collections.unmodifiableSet(names);
+        this.globs = globs.toArray(new String[globs.size()][]);
+    }
+
+
+    /**
+     * Returns the compiled form of a name pattern.  Whitespace around the alternatives is ignored.
+     *
+     * @param namePattern The pattern, for example "jcr:* | cq:content"
+     * @return The compiled pattern
+     */
+    @Nonnull
+    public static NamePattern compile(@Nonnull String namePattern) {
+        NamePattern pattern = CACHE.get(namePattern);
+        if (pattern == null) {
+            List<String> alternatives = new ArrayList<>();
+            for (String alternative : namePattern.split("\\|"))
+                alternatives.add(alternative.trim());
+            pattern = cache(namePattern, new NamePattern(alternatives));
+        }
+        return pattern;
+    }
+
+
+    /**
+     * Returns the compiled form of a list of name globs.  Unlike in a pattern, whitespace and "|" are part of the
+     * globs.
+     *
+     * @param nameGlobs The globs, for example ["jcr:*", "cq:content"]
+     * @return The compiled pattern
+     */
+    @Nonnull
+    public static NamePattern compile(@Nonnull String[] nameGlobs) {
+        List<String> key = Arrays.asList(nameGlobs.clone());
+        NamePattern pattern = CACHE.get(key);
+        return pattern != null ? pattern : cache(key, new NamePattern(key));
+    }
+
+
+    private static NamePattern cache(Object key, NamePattern pattern) {
+        if (CACHE.size() >= MAX_CACHED) CACHE.clear();
+        NamePattern cached = CACHE.putIfAbsent(key, pattern);
+        return cached != null ? cached : pattern;
+    }
+
+
+    /**
+     * Returns true if the name matches one of the alternatives.
+     */
+    public boolean matches(@Nonnull String name) {
+        if (names.contains(name)) return true;
+        for (String[] glob : globs)
+            if (matches(glob, name)) return true;
+        return false;
+    }
+
+
+    private static boolean matches(String[] glob, String name) {
+        String first = glob[0];
+        String last = glob[glob.length - 1];
+        if (name.length() < first.length() + last.length() || !name.startsWith(first) || !name.endsWith(last))
+            return false;
+        int position = first.length();
+        int end = name.length() - last.length();
+        for (int i = 1; i < glob.length - 1; i++) {
+            position = name.indexOf(glob[i], position);
+            if (position < 0 || position + glob[i].length() > end) return false;
+            position += glob[i].length();
+        }
+        return true;
+    }
+
+
+    /**
+     * Returns true if none of the alternatives has a wildcard, so that {@link #getNames()} are all the names that
+     * match.
+     */
+    public boolean isExact() {
+        return globs.length == 0;
+    }
+
+
+    /**
+     * Returns the alternatives without a wildcard, in the order of the pattern.
+     */
+    @Nonnull
+    public Set<String> getNames() {
+        return names;
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.common;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A map that keeps its entries in an order that can be changed.
+ * <p/>
+ * A small map keeps its keys and values in order in a single array, which costs two references per entry, and looks
+ * keys up by going through it.  Once it has more than {@value #MAX_ARRAY_SIZE} entries, it becomes a hash map of the
+ * entries plus a doubly linked list through them, so that looking up, adding, removing and moving an entry are all
+ * O(1), and so is every step of an iteration in order.
+ * <p/>
+ * New entries are added at the end.  Replacing the value of an entry keeps its place.
+ * <p/>
+ * Every change to the entries, including a removal through an iterator, goes through {@link #put(Object, Object)},
+ * {@link #remove(Object)} or {@link #clear()}, so a subclass can keep track of the entries by overriding those.
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+public class OrderedMap<K, V> extends AbstractMap<K, V> {
+    static final int MAX_ARRAY_SIZE = 16;
+
+    private Object[] array; // the keys and values of a small map, one after the other, in order
+    private int arraySize;
+    private Map<K, Node<K, V>> nodes; // the entries of a large map, null while the map is small
+    private Node<K, V> first;
+    private Node<K, V> last;
+    private int modCount;
+
+
+    public OrderedMap() {
+    }
+
+
+    /**
+     * Creates a map with the entries of the other map, in the order of its iteration.
+     */
+    public OrderedMap(@Nonnull Map<? extends K, ? extends V> other) {
+        if (other.size() > MAX_ARRAY_SIZE)
+            nodes = new HashMap<>(Math.max(2 * other.size(), 16));
+        else if (!other.isEmpty())
+            array = new Object[2 * other.size()];
+        for (Map.Entry<? extends K, ? extends V> entry : other.entrySet())
+            put(entry.getKey(), entry.getValue());
+    }
+
+
+    @Override
+    public int size() {
+        return nodes != null ? nodes.size() : arraySize;
+    }
+
+
+    @Override
+    public boolean containsKey(Object key) {
+        return nodes != null ? nodes.containsKey(key) : indexOf(key) >= 0;
+    }
+
+
+    @Override
+    @Nullable
+    public V get(Object key) {
+        if (nodes == null) {
+            int index = indexOf(key);
+            return index >= 0 ? valueAt(index) : null;
+        }
+        Node<K, V> node = nodes.get(key);
+        return node != null ? node.getValue() : null;
+    }
+
+
+    @Override
+    @Nullable
+    public V put(K key, V value) {
+        if (nodes == null) {
+            int index = indexOf(key);
+            if (index >= 0) {
+                V previous = valueAt(index);
+                array[2 * index + 1] = value;
+                return previous;
+            }
+            if (arraySize < MAX_ARRAY_SIZE) {
+                if (array == null || array.length == 2 * arraySize) {
+                    int capacity = Math.min(Math.max(2 * arraySize, 1), MAX_ARRAY_SIZE);
+                    array = array != null ? Arrays.copyOf(array, 2 * capacity) : new Object[2 * capacity];
+                }
+                array[2 * arraySize] = key;
+                array[2 * arraySize + 1] = value;
+                arraySize++;
+                modCount++;
+                return null;
+            }
+            toNodes();
+        }
+        Node<K, V> node = nodes.get(key);
+        if (node != null) return node.setValue(value);
+        node = new Node<>(key, value);
+        nodes.put(key, node);
+        linkBefore(node, null);
+        return null;
+    }
+
+
+    @Override
+    @Nullable
+    public V remove(Object key) {
+        if (nodes == null) {
+            int index = indexOf(key);
+            if (index < 0) return null;
+            V previous = valueAt(index);
+            System.arraycopy(array, 2 * index + 2, array, 2 * index, 2 * (arraySize - index - 1));
+            arraySize--;
+            array[2 * arraySize] = null;
+            array[2 * arraySize + 1] = null;
+            modCount++;
+            return previous;
+        }
+        Node<K, V> node = nodes.remove(key);
+        if (node == null) return null;
+        unlink(node);
+        return node.getValue();
+    }
+
+
+    @Override
+    public void clear() {
+        array = null;
+        arraySize = 0;
+        nodes = null;
+        first = null;
+        last = null;
+        modCount++;
+    }
+
+
+    /**
+     * Moves an entry in front of another one.
+     *
+     * @param key    The key of the entry to move
+     * @param before The key of the entry to move it in front of, or null to move it to the end
+     * @throws NoSuchElementException If there is no entry for either of the keys
+     */
+    public void orderBefore(@Nonnull K key, @Nullable K before) {
+        if (nodes == null) {
+            int index = indexOf(key);
+            int next = before != null ? indexOf(before) : arraySize;
+            if (index < 0) throw new NoSuchElementException(String.valueOf(key));
+            if (next < 0) throw new NoSuchElementException(String.valueOf(before));
+            if (index == next || index + 1 == next) return;
+            Object movedKey = array[2 * index];
+            Object movedValue = array[2 * index + 1];
+            if (index < next) {
+                System.arraycopy(array, 2 * index + 2, array, 2 * index, 2 * (next - index - 1));
+                next--;
+            }
+            else {
+                System.arraycopy(array, 2 * next, array, 2 * next + 2, 2 * (index - next));
+            }
+            array[2 * next] = movedKey;
+            array[2 * next + 1] = movedValue;
+            modCount++;
+            return;
+        }
+        Node<K, V> node = nodes.get(key);
+        Node<K, V> next = before != null ? nodes.get(before) : null;
+        if (node == null) throw new NoSuchElementException(String.valueOf(key));
+        if (before != null && next == null) throw new NoSuchElementException(String.valueOf(before));
+        if (node == next || node.next == next) return;
+        unlink(node);
+        linkBefore(node, next);
+    }
+
+
+    @Override
+    @Nonnull
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return nodes != null ? new NodeIterator() : new ArrayIterator();
+            }
+
+
+            @Override
+            public int size() {
+                return OrderedMap.this.size();
+            }
+        };
+    }
+
+
+    private int indexOf(Object key) {
+        for (int i = 0; i < arraySize; i++)
+            if (Objects.equals(key, array[2 * i])) return i;
+        return -1;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private K keyAt(int index) {
+        return (K)array[2 * index];
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int index) {
+        return (V)array[2 * index + 1];
+    }
+
+
+    /**
+     * Turns a small map into a large one, keeping the order of the entries.
+     */
+    private void toNodes() {
+        nodes = new HashMap<>(4 * MAX_ARRAY_SIZE);
+        for (int i = 0; i < arraySize; i++) {
+            Node<K, V> node = new Node<>(keyAt(i), valueAt(i));
+            nodes.put(node.getKey(), node);
+            linkBefore(node, null);
+        }
+        array = null;
+        arraySize = 0;
+    }
+
+
+    private void linkBefore(Node<K, V> node, @Nullable Node<K, V> next) {
+        Node<K, V> previous = next != null ? next.previous : last;
+        node.previous = previous;
+        node.next = next;
+        if (previous != null) previous.next = node;
+        else first = node;
+        if (next != null) next.previous = node;
+        else last = node;
+        modCount++;
+    }
+
+
+    private void unlink(Node<K, V> node) {
+        if (node.previous != null) node.previous.next = node.next;
+        else first = node.next;
+        if (node.next != null) node.next.previous = node.previous;
+        else last = node.previous;
+        node.previous = null;
+        node.next = null;
+        modCount++;
+    }
+
+
+    private static final class Node<K, V> extends SimpleEntry<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private Node<K, V> previous;
+        private Node<K, V> next;
+
+
+        private Node(K key, V value) {
+            super(key, value);
+        }
+    }
+
+
+    /**
+     * An entry of a small map, which sets its value through the map.
+     */
+    private final class ArrayEntry extends SimpleEntry<K, V> {
+        private static final long serialVersionUID = 1L;
+
+
+        private ArrayEntry(K key, V value) {
+            super(key, value);
+        }
+
+
+        @Override
+        public V setValue(V value) {
+            super.setValue(value);
+            return put(getKey(), value);
+        }
+    }
+
+
+    private final class ArrayIterator implements Iterator<Map.Entry<K, V>> {
+        private int next;
+        private boolean removable;
+        private int expectedModCount = modCount;
+
+
+        @Override
+        public boolean hasNext() {
+            return next < arraySize;
+        }
+
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (next >= arraySize) throw new NoSuchElementException();
+            removable = true;
+            next++;
+            return new ArrayEntry(keyAt(next - 1), valueAt(next - 1));
+        }
+
+
+        @Override
+        public void remove() {
+            if (!removable) throw new IllegalStateException();
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            OrderedMap.this.remove(keyAt(next - 1));
+            next--;
+            removable = false;
+            expectedModCount = modCount;
+        }
+    }
+
+
+    private final class NodeIterator implements Iterator<Map.Entry<K, V>> {
+        private Node<K, V> next = first;
+        private Node<K, V> current;
+        private int expectedModCount = modCount;
+
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (next == null) throw new NoSuchElementException();
+            current = next;
+            next = next.next;
+            return current;
+        }
+
+
+        @Override
+        public void remove() {
+            if (current == null) throw new IllegalStateException();
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            OrderedMap.this.remove(current.getKey());
+            current = null;
+            expectedModCount = modCount;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.common;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * An immutable path, kept as a link to its parent path plus its last segment, so that getting the parent, the name and
+ * the depth of a path, or a child of it, never touches a string.  The hash code and the string form of a path are
+ * computed once.
+ * <p/>
+ * Paths are normalized as they are parsed: empty and "." segments are dropped, and ".." drops the segment before it.
+ * A ".." that has no segment before it to drop is kept, so "../a" stays as it is, and "/../a" is a path that no item
+ * can have.  A path is either absolute ("/a/b", with {@link #ROOT} at its top) or relative ("a/b", with {@link #EMPTY}
+ * at its top).
+ */
+public final class Path {
+    /**
+     * The root path, "/".
+     */
+    public static final Path ROOT = new Path(null, "", true);
+
+    /**
+     * The empty relative path, "".
+     */
+    public static final Path EMPTY = new Path(null, "", false);
+
+    private static final String PARENT = "..";
+
+    private final Path parent;
+    private final String name;
+    private final boolean absolute;
+    private final int depth;
+    private final int hash;
+    private String string; // computed on first use; computing it twice is harmless
+
+
+    private Path(@Nullable Path parent, @Nonnull String name, boolean absolute) {
+        this.parent = parent;
+        this.name = name;
+        this.absolute = absolute;
+        this.depth = parent != null ? parent.depth + 1 : 0;
+        this.hash = parent != null ? 31 * parent.hash + name.hashCode() : (absolute ? 1 : 0);
+    }
+
+
+    /**
+     * Parses and normalizes a path.
+     *
+     * @param path The path, absolute if it starts with '/'
+     * @return The path
+     */
+    @Nonnull
+    public static Path of(@Nonnull String path) {
+        if (path.isEmpty()) return EMPTY;
+        if (path.equals(Paths.SEPARATOR)) return ROOT;
+        return Paths.isAbsolute(path) ? ROOT.append(path, 1) : EMPTY.append(path, 0);
+    }
+
+
+    /**
+     * Resolves a path against this one.
+     *
+     * @param path The path to resolve
+     * @return The path itself if it is absolute, or else this path followed by the segments of the path, normalized
+     */
+    @Nonnull
+    public Path resolve(@Nonnull String path) {
+        return Paths.isAbsolute(path) ? of(path) : append(path, 0);
+    }
+
+
+    private Path append(String path, int start) {
+        Path result = this;
+        int length = path.length();
+        while (start <= length) {
+            int end = path.indexOf(Paths.SEPARATOR, start);
+            if (end < 0) end = length;
+            int segment = end - start;
+            if (segment == 2 && path.startsWith(PARENT, start))
+                result = result.depth > 0 && !result.name.equals(PARENT) ? result.parent : result.getChild(PARENT);
+            else if (segment > 1 || (segment == 1 && path.charAt(start) != '.'))
+                result = result.getChild(path.substring(start, end));
+            start = end + 1;
+        }
+        return result;
+    }
+
+
+    /**
+     * Returns the child of this path with the given name.
+     *
+     * @param name The last segment of the child
+     * @return The child path
+     */
+    @Nonnull
+    public Path getChild(@Nonnull String name) {
+        return new Path(this, name, absolute);
+    }
+
+
+    /**
+     * Returns the parent of this path, or null for the root and the empty path.
+     */
+    @Nullable
+    public Path getParent() {
+        return parent;
+    }
+
+
+    /**
+     * Returns the ancestor of this path at the given depth.
+     *
+     * @param depth The depth of the ancestor, between 0 (the root or empty path) and the depth of this path
+     * @return The ancestor, or this path itself for its own depth
+     * @throws IllegalArgumentException If there is no ancestor at that depth
+     */
+    @Nonnull
+    public Path getAncestor(int depth) {
+        if (depth < 0 || depth > this.depth) throw new IllegalArgumentException("No ancestor at depth " + depth + " of " + this);
+        Path ancestor = this;
+        while (ancestor.depth > depth)
+            ancestor = ancestor.parent;
+        return ancestor;
+    }
+
+
+    /**
+     * Returns the last segment of this path, or "" for the root and the empty path.
+     */
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+
+    /**
+     * Returns the number of segments in this path.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+
+    public boolean isAbsolute() {
+        return absolute;
+    }
+
+
+    public boolean isRoot() {
+        return absolute && depth == 0;
+    }
+
+
+    /**
+     * Returns true if this path is an ancestor of the other path, without being the other path itself.
+     */
+    public boolean isAncestorOf(@Nonnull Path other) {
+        return other.depth > depth && other.getAncestor(depth).equals(this);
+    }
+
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof Path)) return false;
+        Path path = (Path)other;
+        Path self = this;
+        if (path.hash != hash || path.depth != depth || path.absolute != absolute) return false;
+        while (self != path) {
+            if (!self.name.equals(path.name)) return false;
+            self = self.parent;
+            path = path.parent;
+        }
+        return true;
+    }
+
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+
+    @Override
+    @Nonnull
+    public String toString() {
+        String result = string;
+        if (result == null) {
+            if (parent == null)
+                result = absolute ? Paths.SEPARATOR : "";
+            else if (parent.depth == 0)
+                result = absolute ? Paths.SEPARATOR + name : name;
+            else
+                result = parent.toString() + Paths.SEPARATOR + name;
+            string = result;
+        }
+        return result;
+    }
+}
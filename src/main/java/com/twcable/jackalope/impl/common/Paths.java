@@ -18,12 +18,18 @@ package com.twcable.jackalope.impl.common;
 
 import com.google.common.base.Strings;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * Utilities for manipulating path strings.
  */
 public final class Paths {
     public final static String SEPARATOR = "/";
 
+    private static final int MAX_CACHED = 1024;
+    private static final ConcurrentMap<String, String> NORMALIZED = new ConcurrentHashMap<>();
+
 
     private Paths() {
     }
@@ -141,13 +147,50 @@ public final class Paths {
      * @param first  The path to be used as the context
      * @param second The target path
      * @return If the second path is absolute, it is returned.  Otherwise, the return path is constructed by appending
-     * the second (child) path to the first (parent) path.
+     * the second (child) path to the first (parent) path.  Either way, the path is normalized (see {@link
+     * #normalize(String)}).
      */
-    //TODO: Normalize the paths
     public static String resolve(String first, String second) {
-        return isAbsolute(second) ? second :
+        return normalize(isAbsolute(second) ? second :
             Strings.isNullOrEmpty(first) || isRoot(first) ? first + second :
-                first + SEPARATOR + second;
+                first + SEPARATOR + second);
+    }
+
+
+    /**
+     * Normalizes the path: drops empty segments (such as a trailing '/') and "." segments, and drops every ".." segment
+     * together with the segment before it.  A ".." that has no segment before it is kept.
+     * <p/>
+     * A path that is already normal is returned as it is, after one pass over it.  The others are normalized by
+     * {@link Path}, and the results are cached.
+     *
+     * @param path The path
+     * @return The normalized path
+     */
+    public static String normalize(String path) {
+        if (isNormal(path)) return path;
+        String normalized = NORMALIZED.get(path);
+        if (normalized == null) {
+            normalized = Path.of(path).toString();
+            if (NORMALIZED.size() >= MAX_CACHED) NORMALIZED.clear();
+            NORMALIZED.put(path, normalized);
+        }
+        return normalized;
+    }
+
+
+    private static boolean isNormal(String path) {
+        int length = path.length();
+        if (length <= 1) return !path.equals(".");
+        int start = isAbsolute(path) ? 1 : 0;
+        for (int i = start; i <= length; i++) {
+            if (i < length && path.charAt(i) != '/') continue;
+            int segment = i - start;
+            if (segment == 0) return false;
+            if (path.charAt(start) == '.' && (segment == 1 || (segment == 2 && path.charAt(start + 1) == '.'))) return false;
+            start = i + 1;
+        }
+        return true;
     }
 
 
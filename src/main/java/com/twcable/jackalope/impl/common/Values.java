@@ -43,7 +43,7 @@ public final class Values {
     public static Value[] convertStringsToValues(String... strings) {
         List<Value> values = new ArrayList<>();
         for (String string : strings)
-            values.add(new ValueImpl(string));
+            values.add(ValueImpl.valueOf(string));
         return values.toArray(new Value[values.size()]);
     }
 
@@ -51,7 +51,7 @@ public final class Values {
     public static Value[] convertObjectsToValues(Object... strings) {
         List<Value> values = new ArrayList<>();
         for (Object object : strings)
-            values.add(new ValueImpl(object));
+            values.add(ValueImpl.valueOf(object));
         return values.toArray(new Value[values.size()]);
     }
 }
@@ -284,7 +284,7 @@ public class PageManagerImpl implements PageManager {
     public void order(Page page, String beforeName, boolean autoSave) throws WCMException {
         if (page == null) return;
 
-        order(page.getContentResource(), beforeName, autoSave);
+        order(resolver.getResource(page.getPath()), beforeName, autoSave);
     }
 
 
@@ -296,7 +296,20 @@ public class PageManagerImpl implements PageManager {
 
     @Override
     public void order(Resource resource, String beforeName, boolean autoSave) throws WCMException {
-        throw new UnsupportedOperationException();
+        if (resource == null) return;
+
+        Node node = resource.adaptTo(Node.class);
+        if (node == null) return;
+
+        try {
+            node.getParent().orderBefore(node.getName(), beforeName);
+            if (autoSave) {
+                session.save();
+            }
+        }
+        catch (RepositoryException e) {
+            throw new WCMException("Could not order resource.", e);
+        }
     }
 
 
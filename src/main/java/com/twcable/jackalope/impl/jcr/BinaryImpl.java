@@ -20,51 +20,157 @@ import org.apache.commons.io.IOUtils;
 
 import javax.jcr.Binary;
 import javax.jcr.RepositoryException;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * Simple implementation of an {@link Binary}
+ * <p/>
+ * Binaries of up to {@link #THRESHOLD} bytes are kept in memory.  Larger ones are spooled to a temporary file as they
+ * are read, and read back through a memory mapping of the file, so that a fixture with many large binaries (such as
+ * the renditions of DAM assets) does not have to fit on the heap.  The threshold can be set with the
+ * "jackalope.binary.threshold" system property.
+ * <p/>
+ * Values, and so their binaries, are shared between the snapshots of a session, so {@link #dispose()} does not delete
+ * the file; it is deleted when the JVM exits.
  */
 public class BinaryImpl implements Binary {
-    final byte[] bytes;
+    public static final int THRESHOLD = Integer.getInteger("jackalope.binary.threshold", 64 * 1024);
+
+    final byte[] bytes; // null if the binary is kept in a file
+    private final File file;
+    private final long size;
+    private volatile ByteBuffer mapped;
 
 
     public BinaryImpl(byte[] bytes) {
-        this.bytes = bytes;
+        this(bytes, null, bytes.length);
     }
 
 
     public BinaryImpl(InputStream stream) {
-        byte[] b = new byte[0];
+        this(createQuietly(stream));
+    }
+
+
+    private BinaryImpl(BinaryImpl other) {
+        this(other.bytes, other.file, other.size);
+    }
+
+
+    private BinaryImpl(byte[] bytes, File file, long size) {
+        this.bytes = bytes;
+        this.file = file;
+        this.size = size;
+    }
+
+
+    /**
+     * Reads the binary from the stream.  The stream is not closed.
+     *
+     * @param stream    The stream to read
+     * @param threshold The most bytes to keep in memory. A longer stream is copied to a temporary file.
+     * @return The binary
+     * @throws IOException If the stream can not be read, or the file can not be written
+     */
+    static BinaryImpl create(InputStream stream, int threshold) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        long size = IOUtils.copyLarge(stream, head, 0, threshold + 1L);
+        if (size <= threshold) return new BinaryImpl(head.toByteArray());
+
+        File file = File.createTempFile("jackalope-binary", ".bin");
+        file.deleteOnExit();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            head.writeTo(out);
+            size += IOUtils.copyLarge(stream, out);
+        }
+        return new BinaryImpl(null, file, size);
+    }
+
+
+    private static BinaryImpl createQuietly(InputStream stream) {
         try {
-            b = IOUtils.toByteArray(stream);
+            return create(stream, THRESHOLD);
+        }
+        catch (IOException ioe) {
+            return new BinaryImpl(new byte[0]);
         }
-        catch (IOException ioe) { /* ignore */ }
-        bytes = b;
+    }
+
+
+    /**
+     * Returns true if the binary is kept in a file rather than in memory.
+     */
+    boolean isSpooled() {
+        return file != null;
     }
 
 
     @Override
     public InputStream getStream() throws RepositoryException {
-        return new ByteArrayInputStream(bytes);
+        if (bytes != null) return new ByteArrayInputStream(bytes);
+        try {
+            ByteBuffer buffer = getMapped();
+            return buffer != null ? new ByteBufferInputStream(buffer) : new FileInputStream(file);
+        }
+        catch (IOException ioe) {
+            throw new RepositoryException(ioe);
+        }
     }
 
 
     @Override
     public int read(byte[] b, long position) throws IOException, RepositoryException {
-        int p_int = (int)position;   // Why is position a long and the return an int?
-        int length = (b.length < bytes.length - p_int) ? b.length : bytes.length - p_int;
-        if (length < 0) return -1;
-        System.arraycopy(bytes, p_int, b, 0, length);
+        if (bytes != null) {
+            int p_int = (int)position;   // Why is position a long and the return an int?
+            int length = (b.length < bytes.length - p_int) ? b.length : bytes.length - p_int;
+            if (length < 0) return -1;
+            System.arraycopy(bytes, p_int, b, 0, length);
+            return length;
+        }
+        if (position >= size) return -1;
+        ByteBuffer buffer = getMapped();
+        if (buffer == null) {
+            try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+                return channel.read(ByteBuffer.wrap(b), position);
+            }
+        }
+        int length = (int)Math.min(b.length, size - position);
+        buffer.position((int)position);
+        buffer.get(b, 0, length);
         return length;
     }
 
 
+    /**
+     * Returns a view of the memory mapping of the file, or null if the file is too large to be mapped at once.
+     */
+    private ByteBuffer getMapped() throws IOException {
+        if (size > Integer.MAX_VALUE) return null;
+        ByteBuffer buffer = mapped;
+        if (buffer == null) {
+            try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            mapped = buffer;
+        }
+        return buffer.duplicate();
+    }
+
+
     @Override
     public long getSize() throws RepositoryException {
-        return bytes.length;
+        return size;
     }
 
 
@@ -72,4 +178,47 @@ public class BinaryImpl implements Binary {
     public void dispose() {
 
     }
+
+
+    /**
+     * A stream over the remaining bytes of a buffer.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int length = Math.min(len, buffer.remaining());
+            buffer.get(b, off, length);
+            return length;
+        }
+
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int)Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr;
+
+import javax.jcr.PropertyType;
+
+/**
+ * A BOOLEAN value.  There are only two of them, so {@link #valueOf(boolean)} never allocates.
+ */
+final class BooleanValue extends ValueImpl {
+    static final BooleanValue TRUE = new BooleanValue(true);
+    static final BooleanValue FALSE = new BooleanValue(false);
+
+    private final boolean value;
+
+
+    private BooleanValue(boolean value) {
+        super(PropertyType.BOOLEAN, null);
+        this.value = value;
+    }
+
+
+    static BooleanValue valueOf(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+
+    @Override
+    public String getString() {
+        return Boolean.toString(value);
+    }
+
+
+    @Override
+    public boolean getBoolean() {
+        return value;
+    }
+
+
+    @Override
+    Object getObject() {
+        return value;
+    }
+
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof BooleanValue) return this == o; // there is only one of each
+        return super.equals(o);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return 31 * PropertyType.BOOLEAN + (value ? 1231 : 1237); // the same as ValueImpl's, without boxing
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr;
+
+import com.twcable.jackalope.impl.common.NamePattern;
+import com.twcable.jackalope.impl.common.Paths;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A view of the entries of the child nodes, or of the properties, in the state of a node.  Nothing is copied: the view
+ * iterates over the state itself, which the session will not change anymore (see {@link
+ * SessionImpl#getStableState(int)}).
+ * <p/>
+ * The view skips the child nodes that have been removed since it was created, and so does its size.  As long as the
+ * session has not moved or removed any node, the size is the number of children that the state counts.
+ */
+final class ChildEntries extends AbstractCollection<Map.Entry<String, Object>> {
+    private final SessionImpl session;
+    private final NodeState state;
+    private final boolean nodes;
+    private final NamePattern pattern;
+    private final int structureVersion;
+
+
+    /**
+     * @param session The session of the node
+     * @param state   The state of the node, which must not be changed anymore
+     * @param nodes   If the view holds the child nodes, rather than the properties
+     * @param pattern The pattern the names of the children must match, or null for all children
+     */
+    ChildEntries(@Nonnull SessionImpl session, @Nonnull NodeState state, boolean nodes, @Nullable NamePattern pattern) {
+        this.session = session;
+        this.state = state;
+        this.nodes = nodes;
+        this.pattern = pattern;
+        this.structureVersion = session.getStructureVersion();
+    }
+
+
+    private boolean holds(Map.Entry<String, Object> child) {
+        return NodeState.isNode(child.getValue()) == nodes && (pattern == null || pattern.matches(Paths.basename(child.getKey()))) &&
+            (!nodes || session.getState((Integer)child.getValue()) != null);
+    }
+
+
+    @Override
+    public int size() {
+        if (pattern == null && (!nodes || session.getStructureVersion() == structureVersion))
+            return nodes ? state.children.getNodeCount() : state.children.getPropertyCount();
+        int size = 0;
+        for (Map.Entry<String, Object> child : state.children.entrySet())
+            if (holds(child)) size++;
+        return size;
+    }
+
+
+    @Override
+    @Nonnull
+    public Iterator<Map.Entry<String, Object>> iterator() {
+        final Iterator<Map.Entry<String, Object>> children = state.children.entrySet().iterator();
+        return new Iterator<Map.Entry<String, Object>>() {
+            private Map.Entry<String, Object> next = advance();
+
+
+            private Map.Entry<String, Object> advance() {
+                while (children.hasNext()) {
+                    Map.Entry<String, Object> child = children.next();
+                    if (holds(child)) return child;
+                }
+                return null;
+            }
+
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+
+            @Override
+            public Map.Entry<String, Object> next() {
+                if (next == null) throw new NoSuchElementException();
+                Map.Entry<String, Object> child = next;
+                next = advance();
+                return child;
+            }
+
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
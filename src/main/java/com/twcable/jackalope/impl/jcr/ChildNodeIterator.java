@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the child nodes of a node, creating each Node only when the iterator gets to it.  A child that has
+ * been removed by the time the iterator gets to it is skipped.
+ */
+class ChildNodeIterator extends RangeIteratorImpl<Map.Entry<String, Object>> implements NodeIterator {
+    private final SessionImpl session;
+    private NodeImpl next; // the next node, once hasNext() has found it
+
+
+    ChildNodeIterator(SessionImpl session, Collection<Map.Entry<String, Object>> children) {
+        super(children);
+        this.session = session;
+    }
+
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && super.hasNext())
+            next = (NodeImpl)super.next();
+        return next != null;
+    }
+
+
+    @Override
+    public Object next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        NodeImpl node = next;
+        next = null;
+        return node;
+    }
+
+
+    @Override
+    public void skip(long skipNum) {
+        if (skipNum > 0 && next != null) {
+            next = null;
+            skipNum--;
+        }
+        super.skip(skipNum);
+    }
+
+
+    @Override
+    public long getPosition() {
+        return next != null ? position - 1 : position;
+    }
+
+
+    /**
+     * Returns the node of the child, or null if it has been removed.
+     */
+    @Override
+    Object convert(Map.Entry<String, Object> child) {
+        return session.getNodeImpl((Integer)child.getValue());
+    }
+
+
+    @Override
+    public Node nextNode() {
+        return (Node)next();
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr;
+
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Iterates over the properties of a node, creating each Property only when the iterator gets to it.
+ */
+class ChildPropertyIterator extends RangeIteratorImpl<Map.Entry<String, Object>> implements PropertyIterator {
+    private final NodeImpl parent;
+
+
+    ChildPropertyIterator(NodeImpl parent, Collection<Map.Entry<String, Object>> properties) {
+        super(properties);
+        this.parent = parent;
+    }
+
+
+    @Override
+    Object convert(Map.Entry<String, Object> property) {
+        return new PropertyImpl(parent, property.getKey());
+    }
+
+
+    @Override
+    public Property nextProperty() {
+        return (Property)next();
+    }
+}
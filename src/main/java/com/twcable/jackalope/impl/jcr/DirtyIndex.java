@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The nodes of a session that have pending changes, linked into a sparse copy of the tree.
+ * <p/>
+ * Every dirty node is linked to its parent, and so on up to the root, so the dirty nodes below a node can be found
+ * by following the links down from it, in O(number of links below it) instead of O(number of pending changes).  A
+ * node that is moved has to be linked again to its new parent.
+ */
+final class DirtyIndex {
+    private final Set<Integer> dirty = new HashSet<>();
+    private final Map<Integer, Integer> parents = new HashMap<>(); // linked node -> the parent it is linked to
+    private final Map<Integer, Set<Integer>> children = new HashMap<>(); // parent -> its linked children
+
+
+    /**
+     * Marks the node as dirty.  It still has to be linked to its parent.
+     */
+    void mark(int id) {
+        dirty.add(id);
+    }
+
+
+    /**
+     * Links the node to its parent.
+     *
+     * @return True if the node was linked to another parent or not at all, so that the parent may have to be linked
+     * as well
+     */
+    boolean link(int id, int parentId) {
+        Integer linked = parents.put(id, parentId);
+        if (linked != null && linked == parentId) return false;
+        if (linked != null) unlinkChild(linked, id);
+        Set<Integer> siblings = children.get(parentId);
+        if (siblings == null) {
+            siblings = new HashSet<>();
+            children.put(parentId, siblings);
+        }
+        siblings.add(id);
+        return true;
+    }
+
+
+    /**
+     * Returns the dirty nodes at or below the node, parents before their children.
+     */
+    @Nonnull
+    List<Integer> getDirtyIds(int id) {
+        List<Integer> found = new ArrayList<>();
+        collectDirtyIds(id, found);
+        return found;
+    }
+
+
+    private void collectDirtyIds(int id, List<Integer> found) {
+        if (dirty.contains(id)) found.add(id);
+        Set<Integer> linked = children.get(id);
+        if (linked != null)
+            for (int child : linked)
+                collectDirtyIds(child, found);
+    }
+
+
+    /**
+     * Marks the node as clean, and drops the links that no longer lead to a dirty node.
+     */
+    void remove(int id) {
+        dirty.remove(id);
+        prune(id);
+    }
+
+
+    void clear() {
+        dirty.clear();
+        parents.clear();
+        children.clear();
+    }
+
+
+    private void prune(int id) {
+        if (dirty.contains(id) || children.containsKey(id)) return;
+        Integer parentId = parents.remove(id);
+        if (parentId != null) unlinkChild(parentId, id);
+    }
+
+
+    private void unlinkChild(int parentId, int id) {
+        Set<Integer> siblings = children.get(parentId);
+        siblings.remove(id);
+        if (siblings.isEmpty()) {
+            children.remove(parentId);
+            prune(parentId);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr;
+
+import javax.jcr.PropertyType;
+
+/**
+ * A DOUBLE value, stored as a primitive so that neither creating it nor reading it allocates.
+ */
+final class DoubleValue extends ValueImpl {
+    private final double value;
+
+
+    DoubleValue(double value) {
+        super(PropertyType.DOUBLE, null);
+        this.value = value;
+    }
+
+
+    @Override
+    public String getString() {
+        return Double.toString(value);
+    }
+
+
+    @Override
+    public double getDouble() {
+        return value;
+    }
+
+
+    @Override
+    Object getObject() {
+        return value;
+    }
+
+
+    /**
+     * Compares the bits of the values, the way {@link Double#equals(Object)} does.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof DoubleValue) return Double.doubleToLongBits(value) == Double.doubleToLongBits(((DoubleValue)o).value);
+        return super.equals(o);
+    }
+
+
+    @Override
+    public int hashCode() {
+        long bits = Double.doubleToLongBits(value);
+        return 31 * PropertyType.DOUBLE + (int)(bits ^ (bits >>> 32)); // the same as ValueImpl's, without boxing
+    }
+}
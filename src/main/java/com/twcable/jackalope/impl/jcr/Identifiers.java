@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr;
+
+import javax.annotation.Nonnull;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Functions for node identifiers.
+ * <p/>
+ * The identifier of a node is derived from its id with a reversible mix, so the id of the node with a given identifier
+ * is computed back from the identifier, and no index from identifiers to ids has to be kept or updated.
+ */
+final class Identifiers {
+    static final int NOT_FOUND = -1;
+    static final String SEED_PROPERTY = "jackalope.identifierSeed";
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final long GOLDEN_GAMMA_INVERSE = 0xF1DE83E19937733DL; // GOLDEN_GAMMA * GOLDEN_GAMMA_INVERSE == 1
+    private static final AtomicLong SEEDS = new AtomicLong();
+
+
+    private Identifiers() {
+    }
+
+
+    /**
+     * Returns the id of the node with the given identifier, by undoing {@link #generate(long, int)}.  The four bits
+     * that the version of the UUID overwrites are not known, so at most 16 candidates are tried.  This costs a few
+     * dozen multiplications, regardless of the number of nodes.
+     *
+     * @param seed The seed of the repository
+     * @param uuid The identifier
+     * @return The id of the node that has or would have the identifier, or NOT_FOUND if there is no such id; whether
+     * there is such a node is up to the caller to check
+     */
+    static int lookup(long seed, @Nonnull UUID uuid) {
+        if (uuid.version() != 4) return NOT_FOUND;
+        for (long version = 0; version < 16; version++) {
+            long bits = (uuid.getMostSignificantBits() & ~0xF000L) | (version << 12);
+            long id = GOLDEN_GAMMA_INVERSE * (unmix(bits) - seed) - 1;
+            if (id >= 0 && id <= Integer.MAX_VALUE && generate(seed, (int)id).equals(uuid)) return (int)id;
+        }
+        return NOT_FOUND;
+    }
+
+
+    /**
+     * Returns the identifier for the node with the given id.
+     * <p/>
+     * Identifiers are derived from the id with a few multiplications and shifts (the SplitMix64 finalizer), instead
+     * of being drawn from the SecureRandom behind {@link UUID#randomUUID()}, which is slow and synchronized.  The
+     * result looks like a random (version 4) UUID, and since ids are unique within a repository, so are the
+     * identifiers.  The same seed always gives the same identifiers.
+     *
+     * @param seed The seed of the repository
+     * @param id   The id of the node
+     */
+    @Nonnull
+    static UUID generate(long seed, int id) {
+        long bits = mix(seed + GOLDEN_GAMMA * (id + 1L));
+        long mostSigBits = (bits & ~0xF000L) | 0x4000L; // version 4
+        long leastSigBits = (mix(bits ^ seed) & ~(3L << 62)) | (1L << 63); // IETF variant
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+
+    /**
+     * Returns the seed for a new repository: the value of the {@value #SEED_PROPERTY} system property if it is set,
+     * so that test runs can be reproduced, and a different seed for every repository otherwise.
+     */
+    static long newSeed() {
+        Long seed = Long.getLong(SEED_PROPERTY);
+        return seed != null ? seed : mix(System.nanoTime() + GOLDEN_GAMMA * SEEDS.incrementAndGet());
+    }
+
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+
+    /**
+     * The inverse of {@link #mix(long)}: each step is undone in reverse order, multiplying by the inverse of the
+     * constant modulo 2^64 and undoing each xor-shift by xor-ing in all of its multiples.
+     */
+    private static long unmix(long z) {
+        z = z ^ (z >>> 31) ^ (z >>> 62);
+        z *= 0x319642B2D24D8EC3L;
+        z = z ^ (z >>> 27) ^ (z >>> 54);
+        z *= 0x96DE1B173F119089L;
+        return z ^ (z >>> 30) ^ (z >>> 60);
+    }
+}
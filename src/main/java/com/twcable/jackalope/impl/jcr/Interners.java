@@ -0,0 +1,44 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr;
+
+import com.twcable.jackalope.impl.common.Interner;
+
+/**
+ * The interners that share item names and string values between all the repositories in the JVM.
+ * <p/>
+ * Most content repeats the same few names ("jcr:primaryType", "jcr:content", ...) and the same few short strings
+ * ("nt:unstructured", "cq:Page", ...) over and over, so nodes keep the shared instances instead of their own copies.
+ */
+public final class Interners {
+    /**
+     * The names of nodes and properties, as they are stored in the state of their parent.  Only stored names are
+     * interned; the segments of the paths that items are looked up by are not.
+     */
+    public static final Interner<String> NAMES = new Interner<>(16 * 1024);
+
+    /**
+     * The STRING values of at most {@link #MAX_INTERNED_LENGTH} characters.  Longer strings are rarely repeated.
+     */
+    public static final Interner<ValueImpl> STRINGS = new Interner<>(16 * 1024);
+
+    public static final int MAX_INTERNED_LENGTH = 64;
+
+
+    private Interners() {
+    }
+}
@@ -16,15 +16,11 @@
 
 package com.twcable.jackalope.impl.jcr;
 
-import com.google.common.base.Strings;
-import com.twcable.jackalope.impl.common.Paths;
-
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.jcr.AccessDeniedException;
 import javax.jcr.InvalidItemStateException;
 import javax.jcr.Item;
-import javax.jcr.ItemExistsException;
 import javax.jcr.ItemNotFoundException;
 import javax.jcr.ItemVisitor;
 import javax.jcr.Node;
@@ -41,75 +37,62 @@ import java.util.Objects;
 @SuppressWarnings("DuplicateThrows")
 public abstract class ItemImpl implements Item {
     protected final SessionImpl session;
-    private String path;
 
 
     /**
      * Construct an implementation of the jcr Item interface.
      *
      * @param session The session for which this Item is being constructed
-     * @param path    The jcr path of this item
-     * @throws ItemNotFoundException
-     * @throws ItemExistsException
      */
-    ItemImpl(@Nonnull SessionImpl session, @Nonnull String path) throws ItemNotFoundException, ItemExistsException {
+    ItemImpl(@Nonnull SessionImpl session) {
         this.session = session;
-        this.path = path;
-        session.addItem(this);
     }
 
 
     @Override
     @Nonnull
-    public String getPath() {
-        return path;
-    }
-
-
-    void setPath(String path) {
-        this.path = path;
-    }
+    public abstract String getPath() throws InvalidItemStateException;
 
 
     @Override
     @Nonnull
-    public String getName() {
-        return Paths.basename(path);
-    }
+    public abstract String getName() throws InvalidItemStateException;
 
 
+    /**
+     * Walks up the parents of this item, without looking at paths.
+     */
     @Override
-    @Nullable
+    @Nonnull
     public Item getAncestor(int depth) throws ItemNotFoundException, RepositoryException {
         int myDepth = getDepth();
-        if (depth > myDepth) throw new ItemNotFoundException();
-        return (depth < myDepth) ? ((NodeImpl)getParent()).getAncestor(depth) : null;
+        if (depth < 0 || depth > myDepth) throw new ItemNotFoundException();
+        ItemImpl ancestor = this;
+        for (int i = myDepth; i > depth && ancestor != null; i--)
+            ancestor = ancestor.getParentImpl();
+        if (ancestor == null) throw new ItemNotFoundException();
+        return ancestor;
     }
 
 
     @Override
     @Nonnull
     public Node getParent() throws ItemNotFoundException, RepositoryException {
-        if (session.getRootNode() == this) throw new ItemNotFoundException();
-        if (Strings.isNullOrEmpty(Paths.parent(path))) return session.getRootNode();
-        return session.getNode(Paths.parent(path));
+        NodeImpl parent = getParentImpl();
+        if (parent == null) throw new ItemNotFoundException();
+        return parent;
     }
 
 
-    ItemImpl getParentImpl() {
-        try {
-            return (ItemImpl)getParent();
-        }
-        catch (RepositoryException re) {
-            return null;
-        }
-    }
+    /**
+     * Returns the parent of this item, or null for the root node.
+     */
+    @Nullable
+    abstract NodeImpl getParentImpl() throws InvalidItemStateException;
 
 
     @Override
-    public int getDepth() {
-        return Paths.depth(path);
-    }
+    public abstract int getDepth() throws InvalidItemStateException;
 
 
     @Override
@@ -136,7 +119,7 @@ public abstract class ItemImpl implements Item {
 
     @Override
     public boolean isSame(Item otherItem) throws RepositoryException {
-        return Objects.equals(path, otherItem.getPath())
+        return Objects.equals(getPath(), otherItem.getPath())
             && (isNode() == otherItem.isNode())
             && (isNode() || getParent().isSame(otherItem.getParent()));
     }
@@ -147,14 +130,14 @@ public abstract class ItemImpl implements Item {
 
 
     @Override
-    public void save() {
+    public void save() throws InvalidItemStateException, ConstraintViolationException {
         session.save(this);
     }
 
 
     @Override
     public void refresh(boolean keepChanges) throws InvalidItemStateException, RepositoryException {
-        //Not implemented
+        if (!keepChanges) session.refresh(this);
     }
 
 
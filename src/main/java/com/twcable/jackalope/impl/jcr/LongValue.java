@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr;
+
+import javax.jcr.PropertyType;
+
+/**
+ * A LONG value, stored as a primitive so that neither creating it nor reading it allocates.
+ */
+final class LongValue extends ValueImpl {
+    private final long value;
+
+
+    LongValue(long value) {
+        super(PropertyType.LONG, null);
+        this.value = value;
+    }
+
+
+    @Override
+    public String getString() {
+        return Long.toString(value);
+    }
+
+
+    @Override
+    public long getLong() {
+        return value;
+    }
+
+
+    @Override
+    Object getObject() {
+        return value;
+    }
+
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof LongValue) return value == ((LongValue)o).value;
+        return super.equals(o);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return 31 * PropertyType.LONG + (int)(value ^ (value >>> 32)); // the same as ValueImpl's, without boxing
+    }
+}
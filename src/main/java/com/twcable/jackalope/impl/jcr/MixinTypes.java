@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import java.util.BitSet;
+
+/**
+ * The mixin types of a node, resolved from the entry of its jcr:mixinTypes property.
+ * <p/>
+ * Besides the types themselves it keeps the ids of all of them and of their supertypes in one bit set, so testing a
+ * node for a mixin type is a single bit test.  A {@link NodeState} keeps the instance until the entry of the property
+ * changes, or a node type is registered.  Instances are never changed, so they can be shared between states.
+ */
+final class MixinTypes {
+    static final MixinTypes NONE = new MixinTypes(null, null, new NodeTypeImpl[0], new BitSet());
+
+    final Object entry;
+    private final Object generation;
+    final NodeTypeImpl[] types;
+    private final BitSet typeIds;
+
+
+    private MixinTypes(@Nullable Object entry, @Nullable Object generation, @Nonnull NodeTypeImpl[] types, @Nonnull BitSet typeIds) {
+        this.entry = entry;
+        this.generation = generation;
+        this.types = types;
+        this.typeIds = typeIds;
+    }
+
+
+    /**
+     * Resolves the mixin types in the entry of a jcr:mixinTypes property.
+     *
+     * @param entry     The entry, or null if the node has no jcr:mixinTypes property
+     * @param nodeTypes The node types to resolve the names against
+     */
+    @Nonnull
+    static MixinTypes of(@Nullable Object entry, @Nonnull NodeTypeManagerImpl nodeTypes) throws RepositoryException {
+        Value value = NodeState.valueOf(entry);
+        Value[] values = value != null ? new Value[]{value} : NodeState.valuesOf(entry);
+        if (values == null || values.length == 0) return entry == null ? NONE : new MixinTypes(entry, null, NONE.types, NONE.typeIds);
+
+        NodeTypeImpl[] types = new NodeTypeImpl[values.length];
+        BitSet typeIds = new BitSet();
+        for (int i = 0; i < values.length; i++) {
+            types[i] = nodeTypes.resolve(values[i].getString(), true);
+            types[i].addTypeIds(typeIds);
+        }
+        return new MixinTypes(entry, nodeTypes.getGeneration(), types, typeIds);
+    }
+
+
+    /**
+     * Returns true if these are the mixin types in the entry, as the node types currently resolve them.
+     */
+    boolean isCurrent(@Nullable Object entry, @Nonnull NodeTypeManagerImpl nodeTypes) {
+        return this.entry == entry && (types.length == 0 || generation == nodeTypes.getGeneration());
+    }
+
+
+    /**
+     * Returns true if one of the mixin types is, or extends, the node type with the id.
+     */
+    boolean isNodeType(int typeId) {
+        return typeId >= 0 && typeIds.get(typeId);
+    }
+
+
+    boolean contains(@Nonnull String name) {
+        for (NodeTypeImpl type : types)
+            if (type.getName().equals(name)) return true;
+        return false;
+    }
+}
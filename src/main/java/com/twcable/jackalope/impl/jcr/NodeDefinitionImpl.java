@@ -27,7 +27,7 @@ public class NodeDefinitionImpl implements NodeDefinition {
 
     @Override
     public NodeType[] getRequiredPrimaryTypes() {
-        return new NodeType[]{new NodeTypeImpl("nt:base")};
+        return new NodeType[]{getDefaultPrimaryType()};
     }
 
 
@@ -39,7 +39,7 @@ public class NodeDefinitionImpl implements NodeDefinition {
 
     @Override
     public NodeType getDefaultPrimaryType() {
-        return new NodeTypeImpl("nt:base");
+        return NodeTypeManagerImpl.getBuiltInType(NodeTypeManagerImpl.NT_BASE, false);
     }
 
 
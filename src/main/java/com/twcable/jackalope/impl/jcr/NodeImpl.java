@@ -16,10 +16,13 @@
 
 package com.twcable.jackalope.impl.jcr;
 
+import com.twcable.jackalope.impl.common.NamePattern;
+import com.twcable.jackalope.impl.common.Path;
 import com.twcable.jackalope.impl.common.Paths;
 import com.twcable.jackalope.impl.common.Values;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.jcr.AccessDeniedException;
 import javax.jcr.Binary;
 import javax.jcr.InvalidItemStateException;
@@ -35,6 +38,7 @@ import javax.jcr.NodeIterator;
 import javax.jcr.PathNotFoundException;
 import javax.jcr.Property;
 import javax.jcr.PropertyIterator;
+import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
 import javax.jcr.UnsupportedRepositoryOperationException;
 import javax.jcr.Value;
@@ -55,7 +59,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.List;
-import java.util.UUID;
 
 
 /**
@@ -63,15 +66,96 @@ import java.util.UUID;
  */
 @SuppressWarnings("DuplicateThrows")
 public class NodeImpl extends ItemImpl implements Node {
-    private final UUID uuid = UUID.randomUUID();
     private static final String DEFAULT_NODETYPE = NodeType.NT_UNSTRUCTURED;
+    private static final String JCR_MIXIN_TYPES = "jcr:mixinTypes";
+    private static final String JCR_PRIMARY_TYPE = "jcr:primaryType";
+
+    final int id;
+    private volatile NodeState state;
+    private volatile Location location;
 
 
     /**
      * Construct a new NodeImpl.
      */
     public NodeImpl(@Nonnull SessionImpl session, String path) throws ItemNotFoundException, ItemExistsException {
-        super(session, path);
+        this(session, Path.of(path));
+    }
+
+
+    NodeImpl(@Nonnull SessionImpl session, @Nonnull Path path) throws ItemNotFoundException, ItemExistsException {
+        super(session);
+        this.id = session.addNode(this, path);
+    }
+
+
+    /**
+     * Construct the NodeImpl for a node that is already stored in the session.
+     */
+    NodeImpl(@Nonnull SessionImpl session, int id) {
+        super(session);
+        this.id = id;
+    }
+
+
+    /**
+     * The path of a node is derived from its parent, and cached until the session's structure changes (i.e. a node
+     * gets moved or removed), so moving a subtree does not have to touch any of the descendants of the moved node.
+     */
+    @Override
+    @Nonnull
+    public String getPath() throws InvalidItemStateException {
+        return getLocation().path.toString();
+    }
+
+
+    @Override
+    public int getDepth() throws InvalidItemStateException {
+        return getLocation().path.getDepth();
+    }
+
+
+    /**
+     * Returns the path of this node.
+     */
+    @Nonnull
+    Path toPath() throws InvalidItemStateException {
+        return getLocation().path;
+    }
+
+
+    /**
+     * Returns the parent and path of this node, as cached for the current structure of the session.
+     */
+    private Location getLocation() throws InvalidItemStateException {
+        int version = session.getStructureVersion();
+        Location cached = location;
+        if (cached == null || cached.version != version) {
+            NodeState state = getNodeState();
+            NodeImpl parent = state.parentId != NodeState.NO_PARENT ? session.getNodeImpl(state.parentId) : null;
+            if (parent != null)
+                cached = new Location(parent, parent.getChildPath(state.name, state.relative), version);
+            else if (state.parentId == NodeState.NO_PARENT)
+                cached = new Location(null, Path.ROOT, version);
+            else // removed, along with its parent
+                cached = new Location(null, cached != null ? cached.path : Path.EMPTY, version);
+            location = cached;
+        }
+        return cached;
+    }
+
+
+    @Override
+    @Nonnull
+    public String getName() throws InvalidItemStateException {
+        return getNodeState().name;
+    }
+
+
+    @Override
+    @Nullable
+    NodeImpl getParentImpl() throws InvalidItemStateException {
+        return getLocation().parent;
     }
 
 
@@ -83,7 +167,7 @@ public class NodeImpl extends ItemImpl implements Node {
 
     @Override
     public Node addNode(String relPath, String primaryNodeTypeName) throws ItemExistsException, PathNotFoundException, NoSuchNodeTypeException, LockException, VersionException, ConstraintViolationException, RepositoryException {
-        Node node = new NodeImpl(session, Paths.resolve(getPath(), relPath));
+        Node node = new NodeImpl(session, getLocation().path.resolve(relPath));
         node.setPrimaryType(primaryNodeTypeName);
         session.changeItem(this);
         return node;
@@ -92,7 +176,8 @@ public class NodeImpl extends ItemImpl implements Node {
 
     @Override
     public void orderBefore(String srcChildRelPath, String destChildRelPath) throws UnsupportedRepositoryOperationException, VersionException, ConstraintViolationException, ItemNotFoundException, LockException, RepositoryException {
-        throw new UnsupportedRepositoryOperationException();
+        session.orderBefore(this, Paths.resolve(getPath(), srcChildRelPath),
+            destChildRelPath != null ? Paths.resolve(getPath(), destChildRelPath) : null);
     }
 
 
@@ -103,7 +188,7 @@ public class NodeImpl extends ItemImpl implements Node {
                 getProperty(name).remove();
             return null;
         }
-        PropertyImpl property = getOrCreateProperty(name);
+        PropertyImpl property = session.getOrAddProperty(this, name);
         property.setValue(value);
         session.changeItem(this);
         return property;
@@ -118,7 +203,7 @@ public class NodeImpl extends ItemImpl implements Node {
 
     @Override
     public Property setProperty(String name, Value[] values) throws ValueFormatException, VersionException, LockException, ConstraintViolationException, RepositoryException {
-        PropertyImpl property = getOrCreateProperty(name);
+        PropertyImpl property = session.getOrAddProperty(this, name);
         property.setValue(values);
         session.changeItem(this);
         return property;
@@ -145,7 +230,7 @@ public class NodeImpl extends ItemImpl implements Node {
 
     @Override
     public Property setProperty(String name, String value) throws ValueFormatException, VersionException, LockException, ConstraintViolationException, RepositoryException {
-        return setProperty(name, new ValueImpl(value));
+        return setProperty(name, value != null ? StringValue.valueOf(value) : null);
     }
 
 
@@ -170,13 +255,13 @@ public class NodeImpl extends ItemImpl implements Node {
 
     @Override
     public Property setProperty(String name, boolean value) throws ValueFormatException, VersionException, LockException, ConstraintViolationException, RepositoryException {
-        return setProperty(name, new ValueImpl(value));
+        return setProperty(name, BooleanValue.valueOf(value));
     }
 
 
     @Override
     public Property setProperty(String name, double value) throws ValueFormatException, VersionException, LockException, ConstraintViolationException, RepositoryException {
-        return setProperty(name, new ValueImpl(value));
+        return setProperty(name, new DoubleValue(value));
     }
 
 
@@ -188,77 +273,81 @@ public class NodeImpl extends ItemImpl implements Node {
 
     @Override
     public Property setProperty(String name, long value) throws ValueFormatException, VersionException, LockException, ConstraintViolationException, RepositoryException {
-        return setProperty(name, new ValueImpl(value));
+        return setProperty(name, new LongValue(value));
     }
 
 
     @Override
     public Property setProperty(String name, Calendar value) throws ValueFormatException, VersionException, LockException, ConstraintViolationException, RepositoryException {
-        return setProperty(name, new ValueImpl(value));
+        return setProperty(name, value != null ? new DateValue(value) : null);
     }
 
 
     @Override
     public Property setProperty(String name, Node value) throws ValueFormatException, VersionException, LockException, ConstraintViolationException, RepositoryException {
-        return null;  // Not implemented
+        return setProperty(name, value != null ? session.getValueFactory().createValue(value) : null);
     }
 
 
     @Override
     public Node getNode(String relPath) throws PathNotFoundException, RepositoryException {
-        return session.getNode(Paths.resolve(getPath(), relPath));
+        ItemImpl item = session.getItemImpl(this, relPath);
+        if (item == null || !item.isNode()) throw new PathNotFoundException(relPath);
+        return (Node)item;
     }
 
 
     @Override
     public NodeIterator getNodes() throws RepositoryException {
-        List<Node> children = new ArrayList<>();
-        for (Item item : session.getChildren(this))
-            if (item.isNode())
-                children.add((Node)item);
-        return new NodeIteratorImpl(children);
+        return getNodes((NamePattern)null);
     }
 
 
     @Override
     public NodeIterator getNodes(String namePattern) throws RepositoryException {
-        // TODO: Implement this soon
-        throw new UnsupportedRepositoryOperationException();
+        return getNodes(NamePattern.compile(namePattern));
     }
 
 
     @Override
     public NodeIterator getNodes(String[] nameGlobs) throws RepositoryException {
-        // TODO: Implement this soon
-        throw new UnsupportedRepositoryOperationException();
+        return getNodes(NamePattern.compile(nameGlobs));
+    }
+
+
+    private NodeIterator getNodes(@Nullable NamePattern pattern) {
+        return new ChildNodeIterator(session, session.getChildEntries(this, pattern, true));
     }
 
 
     @Override
     public Property getProperty(String relPath) throws PathNotFoundException, RepositoryException {
-        return session.getProperty(Paths.resolve(getPath(), relPath));
+        ItemImpl item = session.getItemImpl(this, relPath);
+        if (item == null || item.isNode()) throw new PathNotFoundException(relPath);
+        return (Property)item;
     }
 
 
     @Override
     public PropertyIterator getProperties() throws RepositoryException {
-        List<Property> children = new ArrayList<>();
-        for (Item item : session.getChildren(this))
-            if (!item.isNode())
-                children.add((Property)item);
-        return new PropertyIteratorImpl(children);
+        return getProperties((NamePattern)null);
     }
 
 
     @Override
     public PropertyIterator getProperties(String namePattern) throws RepositoryException {
-        return null;  //Not implemented
+        return getProperties(NamePattern.compile(namePattern));
     }
 
 
     @Override
     public PropertyIterator getProperties(String[] nameGlobs) throws RepositoryException {
-        return null;  //Not implemented
+        return getProperties(NamePattern.compile(nameGlobs));
+    }
+
+
+    private PropertyIterator getProperties(@Nullable NamePattern pattern) {
+        return new ChildPropertyIterator(this, session.getChildEntries(this, pattern, false));
     }
 
 
@@ -270,13 +359,17 @@ public class NodeImpl extends ItemImpl implements Node {
 
     @Override
     public String getUUID() throws UnsupportedRepositoryOperationException, RepositoryException {
-        return uuid.toString();
+        getNodeState(); // fails if the node has been removed by another session
+        return session.getUUID(id).toString();
     }
 
 
+    /**
+     * A referenceable node is identified by its UUID, any other node by its path.
+     */
     @Override
     public String getIdentifier() throws RepositoryException {
-        return getPath();
+        return isNodeType(NodeType.MIX_REFERENCEABLE) ? getUUID() : getPath();
     }
 
 
@@ -288,91 +381,180 @@ public class NodeImpl extends ItemImpl implements Node {
 
     @Override
     public PropertyIterator getReferences() throws RepositoryException {
-        return null;  //Not implemented
+        return session.getReferences(this, null, false);
     }
 
 
     @Override
     public PropertyIterator getReferences(String name) throws RepositoryException {
-        return null;  //Not implemented
+        return session.getReferences(this, name, false);
     }
 
 
     @Override
     public PropertyIterator getWeakReferences() throws RepositoryException {
-        return null;  //Not implemented
+        return session.getReferences(this, null, true);
     }
 
 
     @Override
     public PropertyIterator getWeakReferences(String name) throws RepositoryException {
-        return null;  //Not implemented
+        return session.getReferences(this, name, true);
     }
 
 
     @Override
     public boolean hasNode(String relPath) throws RepositoryException {
-        return session.nodeExists(Paths.resolve(getPath(), relPath));
+        ItemImpl item = session.getItemImpl(this, relPath);
+        return item != null && item.isNode();
     }
 
 
     @Override
     public boolean hasProperty(String relPath) throws RepositoryException {
-        return session.propertyExists(Paths.resolve(getPath(), relPath));
+        ItemImpl item = session.getItemImpl(this, relPath);
+        return item != null && !item.isNode();
     }
 
 
     @Override
     public boolean hasNodes() throws RepositoryException {
-        return getNodes().hasNext();
+        return session.hasChildren(this, true);
     }
 
 
     @Override
     public boolean hasProperties() throws RepositoryException {
-        return getProperties().hasNext();
+        return session.hasChildren(this, false);
     }
 
 
     @Override
     public NodeType getPrimaryNodeType() throws RepositoryException {
-        return new NodeTypeImpl(getProperty("jcr:primaryType").getString());
+        return getPrimaryNodeTypeImpl();
+    }
+
+
+    private NodeTypeImpl getPrimaryNodeTypeImpl() throws RepositoryException {
+        NodeTypeImpl type = getPrimaryType().type;
+        if (type == null) getProperty(JCR_PRIMARY_TYPE).getString(); // fails the way a missing or multi-valued property does
+        return type;
+    }
+
+
+    /**
+     * Returns the primary type of this node.  It is resolved from the jcr:primaryType property once, and kept in the
+     * state of the node until that property changes.  Only a state that the session owns is written to.
+     */
+    @Nonnull
+    PrimaryType getPrimaryType() throws RepositoryException {
+        NodeTypeManagerImpl nodeTypes = session.getNodeTypeManager();
+        NodeState state = getNodeState();
+        String key = SessionImpl.keyOf(id, JCR_PRIMARY_TYPE, false);
+        Object entry = state.children.get(key);
+        PrimaryType primaryType = state.primaryType;
+        if (!primaryType.isCurrent(entry, nodeTypes)) {
+            primaryType = PrimaryType.of(entry, nodeTypes);
+            NodeState owned = session.getCacheableState(id);
+            if (owned != null && owned.children.get(key) == entry)
+                owned.primaryType = primaryType;
+        }
+        return primaryType;
     }
 
 
     @Override
     public NodeType[] getMixinNodeTypes() throws RepositoryException {
-        return new NodeType[0];
+        NodeTypeImpl[] types = getMixinTypes().types;
+        return Arrays.copyOf(types, types.length, NodeType[].class);
     }
 
 
+    /**
+     * Returns the mixin types of this node.  They are resolved from the jcr:mixinTypes property once, and kept in the
+     * state of the node until that property changes.  Only a state that the session owns is written to.
+     */
+    @Nonnull
+    MixinTypes getMixinTypes() throws RepositoryException {
+        NodeTypeManagerImpl nodeTypes = session.getNodeTypeManager();
+        NodeState state = getNodeState();
+        String key = SessionImpl.keyOf(id, JCR_MIXIN_TYPES, false);
+        Object entry = state.children.get(key);
+        MixinTypes mixinTypes = state.mixinTypes;
+        if (!mixinTypes.isCurrent(entry, nodeTypes)) {
+            mixinTypes = MixinTypes.of(entry, nodeTypes);
+            NodeState owned = session.getCacheableState(id);
+            if (owned != null && owned.children.get(key) == entry)
+                owned.mixinTypes = mixinTypes;
+        }
+        return mixinTypes;
+    }
+
+
+    /**
+     * Tests the bit sets of the resolved mixin and primary types, which are kept in the state of the node.  Only a
+     * type that is not registered is tested by name.
+     */
     @Override
     public boolean isNodeType(String nodeTypeName) throws RepositoryException {
-        return getProperty("jcr:primaryType").getString().equals(nodeTypeName);
+        int typeId = session.getNodeTypeManager().getId(nodeTypeName);
+        if (typeId != NodeTypeImpl.UNREGISTERED && getMixinTypes().isNodeType(typeId)) return true;
+        NodeTypeImpl primaryType = getPrimaryType().type;
+        if (typeId != NodeTypeImpl.UNREGISTERED) return primaryType != null && primaryType.isNodeType(typeId);
+        String name = NodeTypeManagerImpl.qualify(nodeTypeName);
+        return getMixinTypes().contains(name) || (primaryType != null && primaryType.getName().equals(name));
     }
 
 
     @Override
     public void setPrimaryType(String nodeTypeName) throws NoSuchNodeTypeException, VersionException, ConstraintViolationException, LockException, RepositoryException {
-        setProperty("jcr:primaryType", nodeTypeName);
+        setProperty(JCR_PRIMARY_TYPE, nodeTypeName);
     }
 
 
     @Override
     public void addMixin(String mixinName) throws NoSuchNodeTypeException, VersionException, ConstraintViolationException, LockException, RepositoryException {
-        //Not Implemented
+        NodeTypeManagerImpl nodeTypes = session.getNodeTypeManager();
+        if (!nodeTypes.hasNodeType(mixinName)) throw new NoSuchNodeTypeException(mixinName);
+        NodeTypeImpl type = nodeTypes.resolve(mixinName, true);
+        if (!type.isMixin()) throw new ConstraintViolationException(mixinName + " is not a mixin type");
+        if (isNodeType(type.getName())) return;
+
+        NodeTypeImpl[] types = getMixinTypes().types;
+        Value[] names = new Value[types.length + 1];
+        for (int i = 0; i < types.length; i++)
+            names[i] = nameValue(types[i].getName());
+        names[types.length] = nameValue(type.getName());
+        setProperty(JCR_MIXIN_TYPES, names);
     }
 
 
     @Override
     public void removeMixin(String mixinName) throws NoSuchNodeTypeException, VersionException, ConstraintViolationException, LockException, RepositoryException {
-        //Not Implemented
+        String name = NodeTypeManagerImpl.qualify(mixinName);
+        MixinTypes mixinTypes = getMixinTypes();
+        if (!mixinTypes.contains(name)) throw new NoSuchNodeTypeException(mixinName);
+
+        List<Value> names = new ArrayList<>(mixinTypes.types.length - 1);
+        for (NodeTypeImpl type : mixinTypes.types)
+            if (!type.getName().equals(name)) names.add(nameValue(type.getName()));
+        if (names.isEmpty())
+            getProperty(JCR_MIXIN_TYPES).remove();
+        else
+            setProperty(JCR_MIXIN_TYPES, names.toArray(new Value[names.size()]));
+    }
+
+
+    private static Value nameValue(String name) {
+        return Interners.STRINGS.intern(new ValueImpl(PropertyType.NAME, name));
     }
 
 
     @Override
     public boolean canAddMixin(String mixinName) throws NoSuchNodeTypeException, RepositoryException {
-        return false;
+        NodeTypeManagerImpl nodeTypes = session.getNodeTypeManager();
+        if (!nodeTypes.hasNodeType(mixinName)) throw new NoSuchNodeTypeException(mixinName);
+        return nodeTypes.getNodeType(mixinName).isMixin();
     }
 
 
@@ -538,7 +720,54 @@ public class NodeImpl extends ItemImpl implements Node {
     }
 
 
-    private PropertyImpl getOrCreateProperty(String name) throws RepositoryException {
-        return hasProperty(name) ? (PropertyImpl)getProperty(name) : new PropertyImpl(session, Paths.resolve(getPath(), name));
+    /**
+     * Returns the current state of this node.  Once this session has removed the node, this is the last state it had.
+     *
+     * @throws InvalidItemStateException if the node is gone without this session having removed it, e.g. because
+     *                                   another session removed it and this session picked that up on refresh or save
+     */
+    @Nonnull
+    NodeState getNodeState() throws InvalidItemStateException {
+        NodeState current = session.getState(id);
+        if (current != null) return current;
+        NodeState last = state;
+        if (last == null) throw new InvalidItemStateException("The node has been removed by another session");
+        return last;
+    }
+
+
+    /**
+     * Keeps the state and path this node has right now, so it can still tell what it was once the session drops it.
+     */
+    void detach() throws InvalidItemStateException {
+        state = getNodeState();
+        getLocation();
+    }
+
+
+    /**
+     * Returns the path of the child of this node with the given name.  Top level items may be relative to the root.
+     */
+    Path getChildPath(String name, boolean relative) throws InvalidItemStateException {
+        Path path = getLocation().path;
+        return path.getDepth() > 0 ? path.getChild(name) : relative ? Path.EMPTY.getChild(name) : Path.ROOT.getChild(name);
+    }
+
+
+    /**
+     * The parent and path of a node together with the structure version they were computed for, so that all of them
+     * can be read and replaced at once.
+     */
+    private static final class Location {
+        private final NodeImpl parent;
+        private final Path path;
+        private final int version;
+
+
+        private Location(@Nullable NodeImpl parent, @Nonnull Path path, int version) {
+            this.parent = parent;
+            this.path = path;
+            this.version = version;
+        }
     }
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr;
+
+import com.twcable.jackalope.impl.common.OrderedMap;
+
+import javax.annotation.Nullable;
+import javax.jcr.Value;
+
+/**
+ * The stored state of a {@link NodeImpl}, including the values of its properties.
+ * <p/>
+ * Properties are not stored on their own: a node keeps them inline, next to its child nodes, and a {@link
+ * PropertyImpl} is only a view on an entry of its parent.  This saves a state, an id and a map entry per property.
+ * <p/>
+ * States are shared between the snapshots and forks of a session, so a state may only be modified by the session
+ * that owns it (see {@link SessionImpl#edit(int)}). Everybody else gets a copy.
+ */
+final class NodeState {
+    static final int NO_PARENT = -1;
+    static final Object NO_VALUE = new Object(); // the entry of a property that has not been given a value yet
+
+    Object owner; // null once the state is shared, see share()
+    int parentId = NO_PARENT;
+    String name = "";
+    boolean relative;
+
+    /**
+     * The child key of every child node and property, in order: new children are added at the end, and child nodes
+     * can be reordered.  A child node maps to its id (an Integer); a property maps to its Value, its Value[] if it is
+     * multi-valued, or {@link #NO_VALUE}.
+     */
+    final Children children;
+
+    /**
+     * The resolved mixin types of the node, for the entry of its jcr:mixinTypes property that they were resolved from.
+     * See {@link NodeImpl#getMixinTypes()}.
+     */
+    MixinTypes mixinTypes = MixinTypes.NONE;
+
+    /**
+     * The resolved primary type of the node, for the entry of its jcr:primaryType property that it was resolved from.
+     * See {@link NodeImpl#getPrimaryType()}.
+     */
+    PrimaryType primaryType = PrimaryType.NONE;
+
+
+    NodeState(Object owner) {
+        this.owner = owner;
+        this.children = new Children();
+    }
+
+
+    private NodeState(Object owner, NodeState other) {
+        this.owner = owner;
+        this.parentId = other.parentId;
+        this.name = other.name;
+        this.relative = other.relative;
+        this.children = new Children(other.children);
+        this.mixinTypes = other.mixinTypes;
+        this.primaryType = other.primaryType;
+    }
+
+
+    /**
+     * Returns a copy of this state that is owned by the given owner.
+     */
+    NodeState copy(Object owner) {
+        return new NodeState(owner, this);
+    }
+
+
+    /**
+     * Gives up the ownership of this state, so that its owner copies it before it changes it again.  Only the owner
+     * may call this.
+     */
+    void share() {
+        owner = null;
+    }
+
+
+    /**
+     * Returns the id of the child node with the given key, or null if there is no such child node.
+     */
+    @Nullable
+    Integer getNodeId(String key) {
+        Object child = children.get(key);
+        return child instanceof Integer ? (Integer)child : null;
+    }
+
+
+    boolean hasProperty(String key) {
+        Object child = children.get(key);
+        return child != null && !(child instanceof Integer);
+    }
+
+
+    static boolean isNode(Object child) {
+        return child instanceof Integer;
+    }
+
+
+    @Nullable
+    static Value valueOf(Object property) {
+        return property instanceof Value ? (Value)property : null;
+    }
+
+
+    @Nullable
+    static Value[] valuesOf(Object property) {
+        return property instanceof Value[] ? (Value[])property : null;
+    }
+
+
+    /**
+     * The children of a node, which count the child nodes as they are added and removed, so that the number of child
+     * nodes and of properties are known without going through the children.
+     * <p/>
+     * The value of a child must only be changed with {@link #put(String, Object)}, not through its entry.
+     */
+    static final class Children extends OrderedMap<String, Object> {
+        private int nodeCount; // no initializer: the copy constructor counts the nodes of the other map as it puts them
+
+
+        Children() {
+        }
+
+
+        Children(Children other) {
+            super(other);
+        }
+
+
+        int getNodeCount() {
+            return nodeCount;
+        }
+
+
+        int getPropertyCount() {
+            return size() - nodeCount;
+        }
+
+
+        @Override
+        @Nullable
+        public Object put(String key, Object value) {
+            Object previous = super.put(key, value);
+            nodeCount += (isNode(value) ? 1 : 0) - (isNode(previous) ? 1 : 0);
+            return previous;
+        }
+
+
+        @Override
+        @Nullable
+        public Object remove(Object key) {
+            Object previous = super.remove(key);
+            if (isNode(previous)) nodeCount--;
+            return previous;
+        }
+
+
+        @Override
+        public void clear() {
+            super.clear();
+            nodeCount = 0;
+        }
+    }
+}
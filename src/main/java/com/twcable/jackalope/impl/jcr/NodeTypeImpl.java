@@ -16,51 +16,135 @@
 
 package com.twcable.jackalope.impl.jcr;
 
+import javax.annotation.Nonnull;
 import javax.jcr.Value;
 import javax.jcr.nodetype.NodeDefinition;
 import javax.jcr.nodetype.NodeType;
 import javax.jcr.nodetype.NodeTypeIterator;
 import javax.jcr.nodetype.PropertyDefinition;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * Simple implementation of an {@link NodeType}
+ * <p/>
+ * Node types are created by {@link NodeTypeManagerImpl}, which hands out one shared instance per registered type.  A
+ * type keeps the ids of itself and all of its supertypes in a bit set, so testing for a type is a single bit test.  A
+ * type that is not registered has no id of its own, and is only tested by name for itself.
  */
 public class NodeTypeImpl implements NodeType {
+    static final int UNREGISTERED = -1;
+
+    private final NodeTypeManagerImpl manager;
+    private final int id;
     private final String nodeTypeName;
+    private final boolean mixin;
+    private final boolean isAbstract;
+    private final String[] declaredSupertypeNames;
+    private final NodeType[] declaredSupertypes;
+    private final NodeType[] supertypes;
+    private final BitSet typeIds;
+
+
+    /**
+     * Creates a copy of the built in node type with the name, or an unregistered primary type if there is none.  The
+     * {@link NodeTypeManagerImpl} of a repository hands out its own instances instead.
+     *
+     * @param nodeTypeName The name of the node type
+     */
+    public NodeTypeImpl(String nodeTypeName) {
+        this(NodeTypeManagerImpl.getBuiltInType(nodeTypeName, false));
+    }
 
 
-    public NodeTypeImpl(String nodeTypeName) {
+    private NodeTypeImpl(NodeTypeImpl other) {
+        this.manager = other.manager;
+        this.id = other.id;
+        this.nodeTypeName = other.nodeTypeName;
+        this.mixin = other.mixin;
+        this.isAbstract = other.isAbstract;
+        this.declaredSupertypeNames = other.declaredSupertypeNames;
+        this.declaredSupertypes = other.declaredSupertypes;
+        this.supertypes = other.supertypes;
+        this.typeIds = other.typeIds;
+    }
+
+
+    NodeTypeImpl(@Nonnull NodeTypeManagerImpl manager, int id, @Nonnull String nodeTypeName, boolean mixin, boolean isAbstract,
+                 @Nonnull String[] declaredSupertypeNames, @Nonnull NodeTypeImpl[] declaredSupertypes) {
+        this.manager = manager;
+        this.id = id;
         this.nodeTypeName = nodeTypeName;
+        this.mixin = mixin;
+        this.isAbstract = isAbstract;
+        this.declaredSupertypeNames = declaredSupertypeNames.clone();
+        this.declaredSupertypes = declaredSupertypes.clone();
+
+        Set<NodeType> allSupertypes = new LinkedHashSet<>();
+        this.typeIds = new BitSet();
+        if (id != UNREGISTERED) typeIds.set(id);
+        for (NodeTypeImpl supertype : declaredSupertypes) {
+            allSupertypes.add(supertype);
+            allSupertypes.addAll(Arrays.asList(supertype.supertypes));
+            typeIds.or(supertype.typeIds);
+        }
+        this.supertypes = allSupertypes.toArray(new NodeType[allSupertypes.size()]);
+    }
+
+
+    /**
+     * Returns the number of this node type in its {@link NodeTypeManagerImpl}, or {@link #UNREGISTERED}.
+     */
+    int getId() {
+        return id;
+    }
+
+
+    /**
+     * Adds the ids of this node type and all of its supertypes to the bit set.
+     */
+    void addTypeIds(@Nonnull BitSet ids) {
+        ids.or(typeIds);
     }
 
 
     @Override
     public NodeType[] getSupertypes() {
-        return new NodeType[0];
+        return supertypes.clone();
     }
 
 
     @Override
     public NodeType[] getDeclaredSupertypes() {
-        return new NodeType[0];
+        return declaredSupertypes.clone();
     }
 
 
     @Override
     public NodeTypeIterator getSubtypes() {
-        return null;
+        return manager.getSubtypes(this, false);
     }
 
 
     @Override
     public NodeTypeIterator getDeclaredSubtypes() {
-        return null;
+        return manager.getSubtypes(this, true);
     }
 
 
     @Override
     public boolean isNodeType(String nodeTypeName) {
-        return this.nodeTypeName.equals(nodeTypeName);  //To change body of implemented methods use File | Settings | File Templates.
+        return isNodeType(manager.getId(nodeTypeName)) || (id == UNREGISTERED && this.nodeTypeName.equals(NodeTypeManagerImpl.qualify(nodeTypeName)));
+    }
+
+
+    /**
+     * Returns true if this node type is, or extends, the node type with the id.
+     */
+    boolean isNodeType(int typeId) {
+        return typeId >= 0 && typeIds.get(typeId);
     }
 
 
@@ -126,19 +210,19 @@ public class NodeTypeImpl implements NodeType {
 
     @Override
     public String[] getDeclaredSupertypeNames() {
-        return new String[0];
+        return declaredSupertypeNames.clone();
     }
 
 
     @Override
     public boolean isAbstract() {
-        return false;
+        return isAbstract;
     }
 
 
     @Override
     public boolean isMixin() {
-        return false;
+        return mixin;
     }
 
 
@@ -170,4 +254,26 @@ public class NodeTypeImpl implements NodeType {
     public NodeDefinition[] getDeclaredChildNodeDefinitions() {
         return new NodeDefinition[0];
     }
+
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof NodeTypeImpl)) return false;
+
+        NodeTypeImpl that = (NodeTypeImpl)o;
+        return manager == that.manager && id == that.id && nodeTypeName.equals(that.nodeTypeName);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return nodeTypeName.hashCode();
+    }
+
+
+    @Override
+    public String toString() {
+        return nodeTypeName;
+    }
 }
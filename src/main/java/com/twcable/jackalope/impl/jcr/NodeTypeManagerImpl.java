@@ -0,0 +1,331 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr;
+
+import javax.annotation.Nonnull;
+import javax.jcr.RepositoryException;
+import javax.jcr.UnsupportedRepositoryOperationException;
+import javax.jcr.nodetype.InvalidNodeTypeDefinitionException;
+import javax.jcr.nodetype.NoSuchNodeTypeException;
+import javax.jcr.nodetype.NodeDefinitionTemplate;
+import javax.jcr.nodetype.NodeType;
+import javax.jcr.nodetype.NodeTypeDefinition;
+import javax.jcr.nodetype.NodeTypeExistsException;
+import javax.jcr.nodetype.NodeTypeIterator;
+import javax.jcr.nodetype.NodeTypeManager;
+import javax.jcr.nodetype.NodeTypeTemplate;
+import javax.jcr.nodetype.PropertyDefinitionTemplate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The registry of the node types of a repository, which all the sessions of the repository share.
+ * <p/>
+ * It starts out with the node types of the JCR spec and the common Sling and CQ types.  Every type gets the next
+ * number as its id when it is registered, and keeps the ids of all its supertypes in a bit set, so that
+ * {@link NodeTypeImpl#isNodeType(String)} is a map lookup and a bit test.  Registered types never change, and are
+ * never removed.
+ * <p/>
+ * Names can be given in the expanded form of the JCR constants ("{http://www.jcp.org/jcr/nt/1.0}folder") as well as
+ * in the qualified form ("nt:folder") for the namespaces of the built in types.
+ * <p/>
+ * Content is often built with node types that nobody registered.  Those resolve to unregistered types, primary types
+ * that extend nt:base or mixin types without supertypes, which are not added to the registry.
+ */
+@SuppressWarnings("DuplicateThrows")
+public final class NodeTypeManagerImpl implements NodeTypeManager {
+    static final String NT_BASE = "nt:base";
+
+    private static final Map<String, String> PREFIXES = new HashMap<>();
+
+    static {
+        PREFIXES.put("http://www.jcp.org/jcr/1.0", "jcr");
+        PREFIXES.put("http://www.jcp.org/jcr/nt/1.0", "nt");
+        PREFIXES.put("http://www.jcp.org/jcr/mix/1.0", "mix");
+        PREFIXES.put("http://sling.apache.org/jcr/sling/1.0", "sling");
+        PREFIXES.put("http://www.day.com/jcr/cq/1.0", "cq");
+    }
+
+    private static final NodeTypeManagerImpl BUILT_IN = new NodeTypeManagerImpl(); // never registered to
+
+    // Copied on every registration and never changed after it has been published, so lookups don't need a lock
+    private volatile Map<String, NodeTypeImpl> types = Collections.emptyMap();
+
+
+    /**
+     * Creates a registry with the built in node types.
+     */
+    public NodeTypeManagerImpl() {
+        define("mix:created", true, false);
+        define("mix:lastModified", true, false);
+        define("mix:mimeType", true, false);
+        define("mix:title", true, false);
+        define("mix:language", true, false);
+        define("mix:etag", true, false);
+        define("mix:lockable", true, false);
+        define("mix:referenceable", true, false);
+        define("mix:shareable", true, false, "mix:referenceable");
+        define("mix:simpleVersionable", true, false);
+        define("mix:versionable", true, false, "mix:simpleVersionable", "mix:referenceable");
+
+        define(NT_BASE, false, true);
+        define("nt:hierarchyNode", false, true, NT_BASE, "mix:created");
+        define("nt:folder", false, false, "nt:hierarchyNode");
+        define("nt:file", false, false, "nt:hierarchyNode");
+        define("nt:linkedFile", false, false, "nt:hierarchyNode");
+        define("nt:resource", false, false, NT_BASE, "mix:mimeType", "mix:lastModified");
+        define("nt:unstructured", false, false, NT_BASE);
+
+        define("sling:Folder", false, false, "nt:folder");
+        define("sling:OrderedFolder", false, false, "sling:Folder");
+        define("cq:Page", false, false, "nt:hierarchyNode");
+        define("cq:PageContent", false, false, "nt:unstructured", "mix:title");
+    }
+
+
+    /**
+     * Returns the built in node type with the name, or an unregistered type, for the node types that are created
+     * outside of a repository.
+     */
+    @Nonnull
+    static NodeTypeImpl getBuiltInType(@Nonnull String name, boolean mixin) {
+        return BUILT_IN.resolve(name, mixin);
+    }
+
+
+    /**
+     * Returns a new registry with the node types of this one, for a copy of the repository.
+     */
+    @Nonnull
+    synchronized NodeTypeManagerImpl copy() {
+        NodeTypeManagerImpl copy = new NodeTypeManagerImpl();
+        for (NodeTypeImpl type : types.values())
+            if (!copy.types.containsKey(type.getName()))
+                copy.define(type.getName(), type.isMixin(), type.isAbstract(), type.getDeclaredSupertypeNames());
+        return copy;
+    }
+
+
+    /**
+     * Returns the qualified form of an expanded name in one of the known namespaces, or the name itself otherwise.
+     */
+    static String qualify(String name) {
+        if (!name.startsWith("{")) return name;
+        int end = name.indexOf('}');
+        String prefix = end > 0 ? PREFIXES.get(name.substring(1, end)) : null;
+        return prefix != null ? prefix + ":" + name.substring(end + 1) : name;
+    }
+
+
+    private void define(String name, boolean mixin, boolean isAbstract, String... supertypeNames) {
+        try {
+            register(name, mixin, isAbstract, supertypeNames);
+        }
+        catch (RepositoryException re) {
+            throw new IllegalStateException(re);
+        }
+    }
+
+
+    private static String[] qualify(String[] names) {
+        String[] qualified = new String[names.length];
+        for (int i = 0; i < names.length; i++)
+            qualified[i] = qualify(names[i]);
+        return qualified;
+    }
+
+
+    private synchronized NodeTypeImpl register(String name, boolean mixin, boolean isAbstract, String... supertypeNames) throws NodeTypeExistsException, NoSuchNodeTypeException {
+        name = qualify(name);
+        supertypeNames = qualify(supertypeNames);
+        if (types.containsKey(name)) throw new NodeTypeExistsException(name);
+        NodeTypeImpl[] supertypes = new NodeTypeImpl[supertypeNames.length];
+        for (int i = 0; i < supertypeNames.length; i++) {
+            supertypes[i] = types.get(supertypeNames[i]);
+            if (supertypes[i] == null) throw new NoSuchNodeTypeException(supertypeNames[i]);
+        }
+
+        NodeTypeImpl type = new NodeTypeImpl(this, types.size(), name, mixin, isAbstract, supertypeNames, supertypes);
+        Map<String, NodeTypeImpl> updated = new LinkedHashMap<>(types);
+        updated.put(name, type);
+        types = updated;
+        return type;
+    }
+
+
+    /**
+     * Returns the registered node type with the name, or else an unregistered type with that name: a primary type
+     * that extends nt:base, or a mixin type without supertypes.  Unregistered types are not added to the registry.
+     */
+    @Nonnull
+    NodeTypeImpl resolve(@Nonnull String name, boolean mixin) {
+        name = qualify(name);
+        NodeTypeImpl type = types.get(name);
+        if (type != null) return type;
+        return mixin ? new NodeTypeImpl(this, NodeTypeImpl.UNREGISTERED, name, true, false, new String[0], new NodeTypeImpl[0]) :
+            new NodeTypeImpl(this, NodeTypeImpl.UNREGISTERED, name, false, false, new String[]{NT_BASE}, new NodeTypeImpl[]{types.get(NT_BASE)});
+    }
+
+
+    /**
+     * Returns a token that changes whenever a node type is registered, so that node types that were resolved before
+     * can be told apart from the ones resolved since.
+     */
+    @Nonnull
+    Object getGeneration() {
+        return types;
+    }
+
+
+    /**
+     * Returns the id of the node type with the name, or -1 if there is no such node type.
+     */
+    int getId(String name) {
+        NodeTypeImpl type = types.get(qualify(name));
+        return type != null ? type.getId() : -1;
+    }
+
+
+    @Override
+    @Nonnull
+    public NodeType getNodeType(String nodeTypeName) throws NoSuchNodeTypeException, RepositoryException {
+        NodeTypeImpl type = types.get(qualify(nodeTypeName));
+        if (type == null) throw new NoSuchNodeTypeException(nodeTypeName);
+        return type;
+    }
+
+
+    @Override
+    public boolean hasNodeType(String name) throws RepositoryException {
+        return types.containsKey(qualify(name));
+    }
+
+
+    @Override
+    public NodeTypeIterator getAllNodeTypes() throws RepositoryException {
+        return new NodeTypeIteratorImpl(new ArrayList<NodeType>(types.values()));
+    }
+
+
+    @Override
+    public NodeTypeIterator getPrimaryNodeTypes() throws RepositoryException {
+        return getNodeTypes(false);
+    }
+
+
+    @Override
+    public NodeTypeIterator getMixinNodeTypes() throws RepositoryException {
+        return getNodeTypes(true);
+    }
+
+
+    private NodeTypeIterator getNodeTypes(boolean mixin) {
+        List<NodeType> nodeTypes = new ArrayList<>();
+        for (NodeTypeImpl type : types.values())
+            if (type.isMixin() == mixin) nodeTypes.add(type);
+        return new NodeTypeIteratorImpl(nodeTypes);
+    }
+
+
+    /**
+     * Returns the types that extend the node type.
+     *
+     * @param type     The node type
+     * @param declared If only the types that declare the node type as a supertype should be returned
+     */
+    NodeTypeIterator getSubtypes(@Nonnull NodeTypeImpl type, boolean declared) {
+        List<NodeType> subtypes = new ArrayList<>();
+        for (NodeTypeImpl other : types.values()) {
+            if (other == type) continue;
+            if (declared ? Arrays.asList(other.getDeclaredSupertypeNames()).contains(type.getName()) : other.isNodeType(type.getId()))
+                subtypes.add(other);
+        }
+        return new NodeTypeIteratorImpl(subtypes);
+    }
+
+
+    @Override
+    public NodeTypeTemplate createNodeTypeTemplate() throws UnsupportedRepositoryOperationException, RepositoryException {
+        throw new UnsupportedRepositoryOperationException();
+    }
+
+
+    @Override
+    public NodeTypeTemplate createNodeTypeTemplate(NodeTypeDefinition ntd) throws UnsupportedRepositoryOperationException, RepositoryException {
+        throw new UnsupportedRepositoryOperationException();
+    }
+
+
+    @Override
+    public NodeDefinitionTemplate createNodeDefinitionTemplate() throws UnsupportedRepositoryOperationException, RepositoryException {
+        throw new UnsupportedRepositoryOperationException();
+    }
+
+
+    @Override
+    public PropertyDefinitionTemplate createPropertyDefinitionTemplate() throws UnsupportedRepositoryOperationException, RepositoryException {
+        throw new UnsupportedRepositoryOperationException();
+    }
+
+
+    /**
+     * Registers a new node type.  Only the name, the supertypes and the mixin and abstract flags of the definition are
+     * used.  Registering the same definition again returns the registered type.  Registered node types can not be
+     * changed, so for a different definition allowUpdate only changes the exception that is thrown.
+     */
+    @Override
+    @Nonnull
+    public NodeType registerNodeType(NodeTypeDefinition ntd, boolean allowUpdate) throws InvalidNodeTypeDefinitionException, NodeTypeExistsException, UnsupportedRepositoryOperationException, RepositoryException {
+        String[] supertypeNames = ntd.getDeclaredSupertypeNames();
+        if (!ntd.isMixin() && supertypeNames.length == 0) supertypeNames = new String[]{NT_BASE};
+        synchronized (this) {
+            NodeTypeImpl registered = types.get(qualify(ntd.getName()));
+            if (registered != null && registered.isMixin() == ntd.isMixin() && registered.isAbstract() == ntd.isAbstract() &&
+                Arrays.equals(registered.getDeclaredSupertypeNames(), qualify(supertypeNames)))
+                return registered;
+            if (allowUpdate && registered != null)
+                throw new UnsupportedRepositoryOperationException("Node types can not be changed: " + ntd.getName());
+            return register(ntd.getName(), ntd.isMixin(), ntd.isAbstract(), supertypeNames);
+        }
+    }
+
+
+    @Override
+    public NodeTypeIterator registerNodeTypes(NodeTypeDefinition[] ntds, boolean allowUpdate) throws InvalidNodeTypeDefinitionException, NodeTypeExistsException, UnsupportedRepositoryOperationException, RepositoryException {
+        List<NodeType> registered = new ArrayList<>(ntds.length);
+        for (NodeTypeDefinition ntd : ntds)
+            registered.add(registerNodeType(ntd, allowUpdate));
+        return new NodeTypeIteratorImpl(registered);
+    }
+
+
+    @Override
+    public void unregisterNodeType(String name) throws UnsupportedRepositoryOperationException, NoSuchNodeTypeException, RepositoryException {
+        throw new UnsupportedRepositoryOperationException("Node types can not be unregistered");
+    }
+
+
+    @Override
+    public void unregisterNodeTypes(String[] names) throws UnsupportedRepositoryOperationException, NoSuchNodeTypeException, RepositoryException {
+        throw new UnsupportedRepositoryOperationException("Node types can not be unregistered");
+    }
+}
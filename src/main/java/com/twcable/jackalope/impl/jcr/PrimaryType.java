@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+
+/**
+ * The primary type of a node, resolved from the entry of its jcr:primaryType property.
+ * <p/>
+ * A {@link NodeState} keeps the instance until the entry of the property changes, or a node type is registered, the
+ * same way it keeps its {@link MixinTypes}.  Instances are never changed, so they can be shared between states.
+ */
+final class PrimaryType {
+    static final PrimaryType NONE = new PrimaryType(null, null, null);
+
+    final Object entry;
+    private final Object generation;
+    final NodeTypeImpl type;
+
+
+    private PrimaryType(@Nullable Object entry, @Nullable Object generation, @Nullable NodeTypeImpl type) {
+        this.entry = entry;
+        this.generation = generation;
+        this.type = type;
+    }
+
+
+    /**
+     * Resolves the primary type in the entry of a jcr:primaryType property.
+     *
+     * @param entry     The entry, or null if the node has no jcr:primaryType property
+     * @param nodeTypes The node types to resolve the name against
+     */
+    @Nonnull
+    static PrimaryType of(@Nullable Object entry, @Nonnull NodeTypeManagerImpl nodeTypes) throws RepositoryException {
+        Value value = NodeState.valueOf(entry);
+        if (value == null) return entry == null ? NONE : new PrimaryType(entry, null, null);
+        return new PrimaryType(entry, nodeTypes.getGeneration(), nodeTypes.resolve(value.getString(), false));
+    }
+
+
+    /**
+     * Returns true if this is the primary type in the entry, as the node types currently resolve it.
+     */
+    boolean isCurrent(@Nullable Object entry, @Nonnull NodeTypeManagerImpl nodeTypes) {
+        return this.entry == entry && (type == null || generation == nodeTypes.getGeneration());
+    }
+}
@@ -17,14 +17,18 @@
 package com.twcable.jackalope.impl.jcr;
 
 import com.google.common.primitives.Longs;
+import com.twcable.jackalope.impl.common.Path;
+import com.twcable.jackalope.impl.common.Paths;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.jcr.Binary;
+import javax.jcr.InvalidItemStateException;
 import javax.jcr.ItemExistsException;
 import javax.jcr.ItemNotFoundException;
 import javax.jcr.ItemVisitor;
 import javax.jcr.Node;
+import javax.jcr.PathNotFoundException;
 import javax.jcr.Property;
 import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
@@ -46,12 +50,57 @@ import java.util.List;
  */
 @SuppressWarnings("DuplicateThrows")
 public class PropertyImpl extends ItemImpl implements Property {
-    private Value value;
-    private Value[] values;
+    final NodeImpl parent;
+    final String key; // in the children of the parent
+    private volatile Object entry;
 
 
     public PropertyImpl(@Nonnull SessionImpl session, @Nonnull String path) throws ItemNotFoundException, ItemExistsException {
-        super(session, path);
+        this(session, Path.of(path));
+    }
+
+
+    PropertyImpl(@Nonnull SessionImpl session, @Nonnull Path path) throws ItemNotFoundException, ItemExistsException {
+        super(session);
+        this.parent = session.addProperty(path);
+        this.key = SessionImpl.keyOf(parent.id, path);
+    }
+
+
+    /**
+     * Construct the PropertyImpl for a property that is already stored in its parent.
+     */
+    PropertyImpl(@Nonnull NodeImpl parent, @Nonnull String key) {
+        super(parent.session);
+        this.parent = parent;
+        this.key = key;
+    }
+
+
+    @Override
+    @Nonnull
+    public String getPath() throws InvalidItemStateException {
+        return parent.getChildPath(getName(), !Paths.isAbsolute(key)).toString();
+    }
+
+
+    @Override
+    @Nonnull
+    public String getName() {
+        return Paths.basename(key);
+    }
+
+
+    @Override
+    @Nonnull
+    NodeImpl getParentImpl() {
+        return parent;
+    }
+
+
+    @Override
+    public int getDepth() throws InvalidItemStateException {
+        return parent.getDepth() + 1;
     }
 
 
@@ -71,28 +120,26 @@ public class PropertyImpl extends ItemImpl implements Property {
         this(session, path);
         List<Value> stringValues = new ArrayList<>(values.length);
         for (String value : values)
-            stringValues.add(new ValueImpl(value));
+            stringValues.add(StringValue.valueOf(value));
         setValue(stringValues.toArray(new Value[stringValues.size()]));
     }
 
 
     @Override
     public void setValue(@Nonnull Value value) throws ValueFormatException, VersionException, LockException, ConstraintViolationException, RepositoryException {
-        this.value = value;
-        session.changeItem(this);
+        session.setValue(this, value, null);
     }
 
 
     @Override
     public void setValue(@Nonnull Value[] values) throws ValueFormatException, VersionException, LockException, ConstraintViolationException, RepositoryException {
-        this.values = values;
-        session.changeItem(this);
+        session.setValue(this, null, values);
     }
 
 
     @Override
     public void setValue(@Nonnull String value) throws ValueFormatException, VersionException, LockException, ConstraintViolationException, RepositoryException {
-        setValue(new ValueImpl(value));
+        setValue(value != null ? StringValue.valueOf(value) : null);
     }
 
 
@@ -100,7 +147,7 @@ public class PropertyImpl extends ItemImpl implements Property {
     public void setValue(@Nonnull String[] values) throws ValueFormatException, VersionException, LockException, ConstraintViolationException, RepositoryException {
         List<Value> valueList = new ArrayList<>(values.length);
         for (String value : values)
-            valueList.add(new ValueImpl(value));
+            valueList.add(StringValue.valueOf(value));
         setValue(valueList.toArray(new Value[valueList.size()]));
     }
 
@@ -119,13 +166,13 @@ public class PropertyImpl extends ItemImpl implements Property {
 
     @Override
     public void setValue(long value) throws ValueFormatException, VersionException, LockException, ConstraintViolationException, RepositoryException {
-        setValue(new ValueImpl(value));
+        setValue(new LongValue(value));
     }
 
 
     @Override
     public void setValue(double value) throws ValueFormatException, VersionException, LockException, ConstraintViolationException, RepositoryException {
-        setValue(new ValueImpl(value));
+        setValue(new DoubleValue(value));
     }
 
 
@@ -137,33 +184,33 @@ public class PropertyImpl extends ItemImpl implements Property {
 
     @Override
     public void setValue(@Nonnull Calendar value) throws ValueFormatException, VersionException, LockException, ConstraintViolationException, RepositoryException {
-        setValue(new ValueImpl(value));
+        setValue(value != null ? new DateValue(value) : null);
     }
 
 
     @Override
     public void setValue(boolean value) throws ValueFormatException, VersionException, LockException, ConstraintViolationException, RepositoryException {
-        setValue(new ValueImpl(value));
+        setValue(BooleanValue.valueOf(value));
     }
 
 
     @Override
     public void setValue(@Nonnull Node value) throws ValueFormatException, VersionException, LockException, ConstraintViolationException, RepositoryException {
-        //Not implemented
+        setValue(value != null ? session.getValueFactory().createValue(value) : null);
     }
 
 
     @Override
     @Nonnull
     public Value getValue() throws ValueFormatException, RepositoryException {
-        return value;
+        return NodeState.valueOf(getEntry());
     }
 
 
     @Override
     @Nonnull
     public Value[] getValues() throws ValueFormatException, RepositoryException {
-        return values;
+        return NodeState.valuesOf(getEntry());
     }
 
 
@@ -171,7 +218,7 @@ public class PropertyImpl extends ItemImpl implements Property {
     @Nonnull
     public String getString() throws ValueFormatException, RepositoryException {
         if (isMultiple()) throw new ValueFormatException();
-        return value.getString();  //To change body of implemented methods use File | Settings | File Templates.
+        return getValue().getString();  //To change body of implemented methods use File | Settings | File Templates.
     }
 
 
@@ -186,21 +233,21 @@ public class PropertyImpl extends ItemImpl implements Property {
     @Nonnull
     public Binary getBinary() throws ValueFormatException, RepositoryException {
         if (isMultiple()) throw new ValueFormatException();
-        return value.getBinary();  //To change body of implemented methods use File | Settings | File Templates.
+        return getValue().getBinary();  //To change body of implemented methods use File | Settings | File Templates.
     }
 
 
     @Override
     public long getLong() throws ValueFormatException, RepositoryException {
         if (isMultiple()) throw new ValueFormatException();
-        return value.getLong();  //To change body of implemented methods use File | Settings | File Templates.
+        return getValue().getLong();  //To change body of implemented methods use File | Settings | File Templates.
     }
 
 
     @Override
     public double getDouble() throws ValueFormatException, RepositoryException {
         if (isMultiple()) throw new ValueFormatException();
-        return value.getDouble();  //To change body of implemented methods use File | Settings | File Templates.
+        return getValue().getDouble();  //To change body of implemented methods use File | Settings | File Templates.
     }
 
 
@@ -208,7 +255,7 @@ public class PropertyImpl extends ItemImpl implements Property {
     @Nonnull
     public BigDecimal getDecimal() throws ValueFormatException, RepositoryException {
         if (isMultiple()) throw new ValueFormatException();
-        return value.getDecimal();  //To change body of implemented methods use File | Settings | File Templates.
+        return getValue().getDecimal();  //To change body of implemented methods use File | Settings | File Templates.
     }
 
 
@@ -216,20 +263,37 @@ public class PropertyImpl extends ItemImpl implements Property {
     @Nonnull
     public Calendar getDate() throws ValueFormatException, RepositoryException {
         if (isMultiple()) throw new ValueFormatException();
-        return value.getDate();  //To change body of implemented methods use File | Settings | File Templates.
+        return getValue().getDate();  //To change body of implemented methods use File | Settings | File Templates.
     }
 
 
     @Override
     public boolean getBoolean() throws ValueFormatException, RepositoryException {
         if (isMultiple()) throw new ValueFormatException();
-        return value.getBoolean();  //To change body of implemented methods use File | Settings | File Templates.
+        return getValue().getBoolean();  //To change body of implemented methods use File | Settings | File Templates.
     }
 
 
     @Override
     public Node getNode() throws ItemNotFoundException, ValueFormatException, RepositoryException {
-        return null;  //not implemented
+        if (isMultiple()) throw new ValueFormatException(getPath() + " is multi-valued");
+        Value value = getValue();
+        switch (value.getType()) {
+            case PropertyType.REFERENCE:
+            case PropertyType.WEAKREFERENCE:
+                return session.getNodeByIdentifier(value.getString());
+            case PropertyType.PATH:
+            case PropertyType.NAME:
+            case PropertyType.STRING:
+                try {
+                    return parent.getNode(value.getString());
+                }
+                catch (PathNotFoundException e) {
+                    throw new ItemNotFoundException(value.getString());
+                }
+            default:
+                throw new ValueFormatException(getPath() + " does not refer to a node");
+        }
     }
 
 
@@ -251,7 +315,7 @@ public class PropertyImpl extends ItemImpl implements Property {
     public long[] getLengths() throws ValueFormatException, RepositoryException {
         if (!isMultiple()) throw new ValueFormatException();
         List<Long> lengths = new ArrayList<>();
-        for (Value value : values)
+        for (Value value : getValues())
             lengths.add((long)value.getString().length());
         return Longs.toArray(lengths);
     }
@@ -342,7 +406,8 @@ public class PropertyImpl extends ItemImpl implements Property {
 
     @Override
     public int getType() throws RepositoryException {
-        return !isMultiple() ? value.getType() :
+        Value[] values = getValues();
+        return values == null ? getValue().getType() :
             values.length > 0 ? values[0].getType() :
                 PropertyType.UNDEFINED;
     }
@@ -350,7 +415,7 @@ public class PropertyImpl extends ItemImpl implements Property {
 
     @Override
     public boolean isMultiple() {
-        return values != null;
+        return getEntry() instanceof Value[];
     }
 
 
@@ -364,4 +429,30 @@ public class PropertyImpl extends ItemImpl implements Property {
     public void accept(ItemVisitor visitor) throws RepositoryException {
         visitor.visit(this);
     }
+
+
+    /**
+     * Properties are views on an entry of their parent, so two of them are equal if they are views on the same entry.
+     */
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof PropertyImpl && ((PropertyImpl)other).parent == parent && ((PropertyImpl)other).key.equals(key);
+    }
+
+
+    @Override
+    public int hashCode() {
+        return 31 * parent.hashCode() + key.hashCode();
+    }
+
+
+    /**
+     * Returns the current entry of this property in its parent. Once the property has been removed, this is the last
+     * entry it had.
+     */
+    private Object getEntry() {
+        Object current = session.getPropertyEntry(parent.id, key);
+        if (current != null) entry = current;
+        return entry != null ? entry : NodeState.NO_VALUE;
+    }
 }
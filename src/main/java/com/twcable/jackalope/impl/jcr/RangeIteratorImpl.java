@@ -19,15 +19,23 @@ package com.twcable.jackalope.impl.jcr;
 import javax.jcr.RangeIterator;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
 
 /**
- * A simple implementation of RangeIterator that delegates to a single simple Iterator.
+ * A simple implementation of RangeIterator over a collection.
+ * <p/>
+ * Skipping is O(1) over a random access list, and the size of the collection is only asked for when it is needed.
+ * Subclasses can iterate over a cheap form of their elements, such as child entries, and {@link #convert(Object)} each
+ * element into what the iterator returns only when the iterator gets to it, so skipped elements are never converted.
  *
  * @param <T> Type of elements in the Collection
  */
 class RangeIteratorImpl<T> implements RangeIterator {
-    final int size;
-    final Iterator<T> iterator;
+    private final Collection<T> source;
+    private final List<T> list; // the source, if it is a random access list
+    private final Iterator<T> iterator; // over the source, if it is not
     int position = 0;
 
 
@@ -36,21 +44,36 @@ class RangeIteratorImpl<T> implements RangeIterator {
      *
      * @param source The collection to iterate over.
      */
+    @SuppressWarnings("unchecked")
     public RangeIteratorImpl(Collection<T> source) {
-        this.size = source.size();
-        this.iterator = source.iterator();
+        this.source = source;
+        this.list = (source instanceof List && source instanceof RandomAccess) ? (List<T>)source : null;
+        this.iterator = list == null ? source.iterator() : null;
     }
 
 
     @Override
     public void skip(long skipNum) {
-        while (skipNum-- > 0) next();
+        if (skipNum < 0) throw new IllegalArgumentException("Can not skip backwards: " + skipNum);
+        if (list != null) {
+            if (skipNum > list.size() - position) {
+                position = list.size();
+                throw new NoSuchElementException();
+            }
+            position += (int)skipNum;
+        }
+        else {
+            for (; skipNum > 0; skipNum--) {
+                iterator.next();
+                position++;
+            }
+        }
     }
 
 
     @Override
     public long getSize() {
-        return size;
+        return source.size();
     }
 
 
@@ -62,19 +85,36 @@ class RangeIteratorImpl<T> implements RangeIterator {
 
     @Override
     public boolean hasNext() {
-        return iterator.hasNext();
+        return list != null ? position < list.size() : iterator.hasNext();
     }
 
 
     @Override
     public Object next() {
+        T element;
+        if (list != null) {
+            if (position >= list.size()) throw new NoSuchElementException();
+            element = list.get(position);
+        }
+        else {
+            element = iterator.next();
+        }
         position++;
-        return iterator.next();
+        return convert(element);
+    }
+
+
+    /**
+     * Returns what the iterator returns for an element of the collection.
+     */
+    Object convert(T element) {
+        return element;
     }
 
 
     @Override
     public void remove() {
+        if (iterator == null) throw new UnsupportedOperationException();
         iterator.remove();
     }
 }
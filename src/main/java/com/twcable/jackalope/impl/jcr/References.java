@@ -0,0 +1,189 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr;
+
+import com.twcable.jackalope.impl.common.IntTrie;
+import com.twcable.jackalope.impl.common.Paths;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Functions for the index from node identifiers to the properties that refer to those nodes.
+ * <p/>
+ * The index is a persistent trie, from the hash of an identifier to the properties with a REFERENCE or WEAKREFERENCE
+ * value with that hash, so it is snapshot, forked and saved along with the item states it indexes.  A property is kept as the id of its node and its key in that node, which both stay the same
+ * when the node is moved, so only setting and removing properties and removing nodes changes the index.
+ */
+final class References {
+
+    private References() {
+    }
+
+
+    /**
+     * Returns the properties that refer to the node with the given identifier.
+     *
+     * @param index  The index
+     * @param target The identifier of the node
+     * @param weak   If the WEAKREFERENCE properties should be returned, rather than the REFERENCE ones
+     * @param name   The name the properties must have, or null for any name
+     */
+    @Nonnull
+    static List<Referrer> lookup(@Nonnull IntTrie<Referrer[]> index, @Nonnull String target, boolean weak, @Nullable String name) {
+        Referrer[] referrers = index.get(key(target));
+        if (referrers == null) return Collections.emptyList();
+        List<Referrer> found = new ArrayList<>(referrers.length);
+        for (Referrer referrer : referrers)
+            if (referrer.weak == weak && referrer.target.equals(target) && (name == null || name.equals(Paths.basename(referrer.key))))
+                found.add(referrer);
+        return found;
+    }
+
+
+    /**
+     * Updates the index for a property whose entry changed from before to after.  Either may be null, for a property
+     * that was added or removed.
+     */
+    @Nonnull
+    static IntTrie<Referrer[]> change(@Nonnull IntTrie<Referrer[]> index, int id, @Nonnull String key, @Nullable Object before, @Nullable Object after, @Nullable Object owner) {
+        if (before == after) return index;
+        for (Value value : referencesIn(before))
+            index = remove(index, referrer(value, id, key), owner);
+        for (Value value : referencesIn(after))
+            index = add(index, referrer(value, id, key), owner);
+        return index;
+    }
+
+
+    /**
+     * Updates the index for a node whose state changed from before to after.  Either may be null, for a node that
+     * was added or removed.  This is O(number of properties of the node).
+     */
+    @Nonnull
+    static IntTrie<Referrer[]> update(@Nonnull IntTrie<Referrer[]> index, int id, @Nullable NodeState before, @Nullable NodeState after, @Nullable Object owner) {
+        if (before == after) return index;
+        if (before != null)
+            for (Map.Entry<String, Object> child : before.children.entrySet()) {
+                if (NodeState.isNode(child.getValue())) continue;
+                Object entry = after != null ? after.children.get(child.getKey()) : null;
+                if (entry != child.getValue()) index = change(index, id, child.getKey(), child.getValue(), null, owner);
+            }
+        if (after != null)
+            for (Map.Entry<String, Object> child : after.children.entrySet()) {
+                if (NodeState.isNode(child.getValue())) continue;
+                Object entry = before != null ? before.children.get(child.getKey()) : null;
+                if (entry != child.getValue()) index = change(index, id, child.getKey(), null, child.getValue(), owner);
+            }
+        return index;
+    }
+
+
+    private static List<Value> referencesIn(@Nullable Object entry) {
+        Value value = NodeState.valueOf(entry);
+        Value[] values = value != null ? new Value[]{value} : NodeState.valuesOf(entry);
+        if (values == null) return Collections.emptyList();
+        List<Value> references = new ArrayList<>(1);
+        for (Value candidate : values)
+            if (candidate != null && (candidate.getType() == PropertyType.REFERENCE || candidate.getType() == PropertyType.WEAKREFERENCE))
+                references.add(candidate);
+        return references;
+    }
+
+
+    private static Referrer referrer(Value value, int id, String key) {
+        try {
+            return new Referrer(value.getString(), value.getType() == PropertyType.WEAKREFERENCE, id, key);
+        }
+        catch (RepositoryException re) {
+            throw new IllegalStateException(re);
+        }
+    }
+
+
+    private static IntTrie<Referrer[]> add(IntTrie<Referrer[]> index, Referrer referrer, @Nullable Object owner) {
+        int key = key(referrer.target);
+        Referrer[] referrers = index.get(key);
+        if (referrers == null) return index.put(key, new Referrer[]{referrer}, owner);
+        if (Arrays.asList(referrers).contains(referrer)) return index; // the property holds the reference twice
+        Referrer[] added = Arrays.copyOf(referrers, referrers.length + 1);
+        added[referrers.length] = referrer;
+        return index.put(key, added, owner);
+    }
+
+
+    private static IntTrie<Referrer[]> remove(IntTrie<Referrer[]> index, Referrer referrer, @Nullable Object owner) {
+        int key = key(referrer.target);
+        Referrer[] referrers = index.get(key);
+        int position = referrers != null ? Arrays.asList(referrers).indexOf(referrer) : -1;
+        if (position < 0) return index;
+        if (referrers.length == 1) return index.put(key, null, owner);
+        Referrer[] remaining = new Referrer[referrers.length - 1];
+        System.arraycopy(referrers, 0, remaining, 0, position);
+        System.arraycopy(referrers, position + 1, remaining, position, remaining.length - position);
+        return index.put(key, remaining, owner);
+    }
+
+
+    private static int key(String target) {
+        return target.hashCode() & Integer.MAX_VALUE;
+    }
+
+
+    /**
+     * A property that refers to a node: the id of the node of the property, and the key of the property in it.
+     */
+    static final class Referrer {
+        final String target;
+        final boolean weak;
+        final int nodeId;
+        final String key;
+
+
+        Referrer(@Nonnull String target, boolean weak, int nodeId, @Nonnull String key) {
+            this.target = target;
+            this.weak = weak;
+            this.nodeId = nodeId;
+            this.key = key;
+        }
+
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Referrer)) return false;
+
+            Referrer that = (Referrer)o;
+            return weak == that.weak && nodeId == that.nodeId && target.equals(that.target) && key.equals(that.key);
+        }
+
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(target, weak, nodeId, key);
+        }
+    }
+}
@@ -18,6 +18,7 @@ package com.twcable.jackalope.impl.jcr;
 
 import org.apache.sling.jcr.api.SlingRepository;
 
+import javax.annotation.Nonnull;
 import javax.jcr.Credentials;
 import javax.jcr.LoginException;
 import javax.jcr.NoSuchWorkspaceException;
@@ -30,11 +31,136 @@ import javax.jcr.Value;
  */
 @SuppressWarnings("DuplicateThrows")
 public class RepositoryImpl implements SlingRepository {
-    private final SessionImpl session;
+    private final Mode mode;
+    private final NodeTypeManagerImpl nodeTypes;
+    private final SessionImpl session; // null if every login gets its own session
+    private final RevisionStore revisions; // null unless every login gets its own session
+
+
+    /**
+     * How the repository hands out sessions.
+     */
+    public enum Mode {
+        /**
+         * Every login returns the same session, so all callers see each other's unsaved changes.  The session must
+         * only be used by one thread at a time.  This is the default.
+         */
+        SHARED_SESSION,
+
+        /**
+         * Every login returns the same session, which can be used by several threads at the same time.
+         *
+         * @see SessionImpl#SessionImpl(javax.jcr.Repository, boolean)
+         */
+        CONCURRENT_SESSION,
+
+        /**
+         * Every login returns a new session.  Each session reads the revision of the repository that was the latest
+         * when it was opened (or last saved or refreshed), and keeps its changes to itself until it saves them.
+         * Sessions never block each other; saving fails if another session saved a change to the same item first.
+         *
+         * @see SessionImpl#save()
+         */
+        SESSION_PER_LOGIN
+    }
 
 
     public RepositoryImpl() {
-        this.session = new SessionImpl(this);
+        this(Mode.SHARED_SESSION);
+    }
+
+
+    /**
+     * Creates an empty repository.
+     *
+     * @param mode How the repository hands out sessions
+     */
+    public RepositoryImpl(@Nonnull Mode mode) {
+        this(new SessionImpl().snapshot(), mode);
+    }
+
+
+    /**
+     * Creates a repository with the content of the snapshot.
+     *
+     * @param snapshot The content of the repository
+     */
+    public RepositoryImpl(@Nonnull Snapshot snapshot) {
+        this(snapshot, Mode.SHARED_SESSION);
+    }
+
+
+    /**
+     * Creates a repository with the content of the snapshot.
+     *
+     * @param snapshot The content of the repository
+     * @param mode     How the repository hands out sessions
+     */
+    public RepositoryImpl(@Nonnull Snapshot snapshot, @Nonnull Mode mode) {
+        this(snapshot, mode, new NodeTypeManagerImpl());
+    }
+
+
+    /**
+     * Creates a fork of the repository: a repository with the same content, mode and node types, that shares nothing
+     * observable with the original.  Subclasses use this to implement {@link #fork()}.
+     *
+     * @param original The repository to fork
+     */
+    protected RepositoryImpl(@Nonnull RepositoryImpl original) {
+        this(original.snapshot(), original.mode, original.nodeTypes.copy());
+    }
+
+
+    private RepositoryImpl(Snapshot snapshot, Mode mode, NodeTypeManagerImpl nodeTypes) {
+        this.mode = mode;
+        this.nodeTypes = nodeTypes;
+        this.session = mode != Mode.SESSION_PER_LOGIN ? new SessionImpl(this, snapshot, mode == Mode.CONCURRENT_SESSION) : null;
+        this.revisions = mode == Mode.SESSION_PER_LOGIN ? new RevisionStore(snapshot) : null;
+    }
+
+
+    @Nonnull
+    public Mode getMode() {
+        return mode;
+    }
+
+
+    /**
+     * Returns the node types of this repository, which all its sessions share.
+     */
+    @Nonnull
+    NodeTypeManagerImpl getNodeTypeManager() {
+        return nodeTypes;
+    }
+
+
+    /**
+     * Takes an O(1) snapshot of the content of this repository.  With a shared session, this includes the changes
+     * that have not been saved yet; otherwise it is the latest saved revision.
+     *
+     * @see SessionImpl#snapshot()
+     */
+    @Nonnull
+    public Snapshot snapshot() {
+        return session != null ? session.snapshot() : revisions.snapshot();
+    }
+
+
+    /**
+     * Creates a new repository with the same content, mode and node types as this one.  This is O(1), regardless of
+     * the amount of content: the repositories share their content until either of them changes it.
+     *
+     * @return The new repository
+     */
+    @Nonnull
+    public RepositoryImpl fork() {
+        return new RepositoryImpl(this);
+    }
+
+
+    private Session openSession() {
+        return session != null ? session : new SessionImpl(this, revisions);
     }
 
 
@@ -76,25 +202,25 @@ public class RepositoryImpl implements SlingRepository {
 
     @Override
     public Session login(Credentials credentials, String workspaceName) throws LoginException, NoSuchWorkspaceException, RepositoryException {
-        return session;
+        return openSession();
     }
 
 
     @Override
     public Session login(Credentials credentials) throws LoginException, RepositoryException {
-        return session;
+        return openSession();
     }
 
 
     @Override
     public Session login(String workspaceName) throws LoginException, NoSuchWorkspaceException, RepositoryException {
-        return session;
+        return openSession();
     }
 
 
     @Override
     public Session login() throws LoginException, RepositoryException {
-        return session;
+        return openSession();
     }
 
 
@@ -106,13 +232,13 @@ public class RepositoryImpl implements SlingRepository {
 
     @Override
     public Session loginAdministrative(String workspace) throws RepositoryException {
-        return session;
+        return openSession();
     }
 
 
     @Override
     public Session loginService(String s, String s1) throws LoginException, RepositoryException {
-        return session;
+        return openSession();
     }
 
 }
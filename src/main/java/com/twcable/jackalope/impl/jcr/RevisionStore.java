@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr;
+
+import com.twcable.jackalope.impl.common.IntTrie;
+import com.twcable.jackalope.impl.jcr.References.Referrer;
+
+import javax.annotation.Nonnull;
+import javax.jcr.InvalidItemStateException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The saved content of a repository that hands every login its own session.
+ * <p/>
+ * Each revision of the content is an immutable tree, so a session simply keeps the revision it started from to read a
+ * consistent view of the repository, without ever blocking.  Saving a session commits its changes on top of the
+ * latest revision; this fails if another session committed a change to one of the same items in the meantime.
+ * <p/>
+ * Conflicts are detected per node, and the children and properties of a node are part of its state.  Changes are not
+ * merged, so two sessions that add, remove or change different children or properties of the same node conflict: the
+ * second one to save fails and has to refresh and repeat its change.
+ */
+final class RevisionStore {
+    private volatile Snapshot head; // its nextId is not used
+    private final AtomicInteger nextId; // shared by all sessions, so the items they add never get the same id
+
+
+    RevisionStore(@Nonnull Snapshot snapshot) {
+        this.head = snapshot;
+        this.nextId = new AtomicInteger(snapshot.nextId);
+    }
+
+
+    int allocateId() {
+        return nextId.getAndIncrement();
+    }
+
+
+    /**
+     * Returns the latest revision.
+     */
+    @Nonnull
+    Snapshot snapshot() {
+        Snapshot revision = head;
+        return new Snapshot(revision.states, revision.references, nextId.get(), revision.seed);
+    }
+
+
+    /**
+     * Commits changes on top of the latest revision.  The states that were committed must never be changed again.
+     *
+     * @param expected The items that were changed, with the state each of them had in the revision the change was
+     *                 based on (null for new items)
+     * @param changed  The tree that holds the new states of the changed items (no state for removed items)
+     * @return The new latest revision
+     * @throws InvalidItemStateException If another session committed a change to one of the items in the meantime
+     */
+    @Nonnull
+    synchronized Snapshot commit(@Nonnull Map<Integer, NodeState> expected, @Nonnull IntTrie<NodeState> changed) throws InvalidItemStateException {
+        IntTrie<NodeState> states = head.states;
+        IntTrie<Referrer[]> references = head.references;
+        for (Map.Entry<Integer, NodeState> entry : expected.entrySet())
+            if (states.get(entry.getKey()) != entry.getValue())
+                throw new InvalidItemStateException("Item " + entry.getKey() + " has been changed by another session");
+        for (Map.Entry<Integer, NodeState> entry : expected.entrySet()) {
+            NodeState state = changed.get(entry.getKey());
+            references = References.update(references, entry.getKey(), entry.getValue(), state, null);
+            states = states.put(entry.getKey(), state, null);
+        }
+        head = new Snapshot(states, references, 0, head.seed);
+        return head;
+    }
+}
@@ -16,12 +16,19 @@
 
 package com.twcable.jackalope.impl.jcr;
 
+import com.google.common.collect.MapMaker;
+import com.twcable.jackalope.impl.common.IntTrie;
+import com.twcable.jackalope.impl.common.NamePattern;
+import com.twcable.jackalope.impl.common.Path;
 import com.twcable.jackalope.impl.common.Paths;
+import com.twcable.jackalope.impl.jcr.References.Referrer;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.jcr.Credentials;
+import javax.jcr.InvalidItemStateException;
 import javax.jcr.InvalidSerializedDataException;
 import javax.jcr.Item;
 import javax.jcr.ItemExistsException;
@@ -31,10 +38,12 @@ import javax.jcr.NamespaceException;
 import javax.jcr.Node;
 import javax.jcr.PathNotFoundException;
 import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
 import javax.jcr.Repository;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.UnsupportedRepositoryOperationException;
+import javax.jcr.Value;
 import javax.jcr.ValueFactory;
 import javax.jcr.Workspace;
 import javax.jcr.lock.LockException;
@@ -46,25 +55,54 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.AccessControlException;
+import java.util.AbstractList;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Simple implementation of an {@link Session}
  */
 @SuppressWarnings("DuplicateThrows")
 public class SessionImpl implements Session {
+    private static final int ROOT_ID = 0;
+    private static final int NO_ITEM = -1;
+
     private final Repository repository;
-    private final Map<String, ItemImpl> itemStore = new LinkedHashMap<>();
+    private final NodeTypeManagerImpl nodeTypes; // those of the repository, if it is a RepositoryImpl
+    private final ReentrantLock writeLock; // only used when the session is shared between threads
+    private final RevisionStore revisions; // only used when the session has its own view of a shared repository
+    private Snapshot saved; // the content as of the last save
+    private IntTrie<NodeState> states; // the saved content plus the pending changes
+    private IntTrie<Referrer[]> references; // the index of the properties in states that refer to nodes
+    private volatile Snapshot published; // what readers on other threads see while states is being written
+    private volatile Thread writer; // the thread that made the changes to states that have not been published yet
+    private Object owner = new Object(); // states owned by this token have not been shared yet and may be edited in place
+    private int nextId;
+    private final long seed; // of the node identifiers
+    // the nodes handed out, so that lookups keep returning the same instance for as long as it is referenced
+    private final ConcurrentMap<Integer, NodeImpl> items = new MapMaker().weakValues().makeMap();
+    private int structureVersion = 0;
+    private volatile int publishedStructureVersion = 0; // published after the tree, so it is never newer than the tree a reader sees
     private boolean isLive = true;
 
-    private Set<String> addedItems = new LinkedHashSet<>();
-    private Set<String> changedItems = new LinkedHashSet<>();
+    private final Set<Integer> addedItems;
+    private final Set<Integer> changedItems;
+    private final Set<Integer> removedItems;
+    private final Map<Integer, NodeState> touched = new HashMap<>(); // the saved state of every node changed since the last save
+    private final DirtyIndex dirty = new DirtyIndex(); // the nodes in touched, by their place in the tree
 
     private Workspace workspace = null;
 
@@ -75,6 +113,15 @@ public class SessionImpl implements Session {
     }
 
 
+    /**
+     * Returns the node types of the session, which are those of its repository.
+     */
+    @Nonnull
+    NodeTypeManagerImpl getNodeTypeManager() {
+        return nodeTypes;
+    }
+
+
     @Override
     public String getUserID() {
         return null;
@@ -106,7 +153,7 @@ public class SessionImpl implements Session {
 
     @Override
     public Node getRootNode() {
-        return (Node)itemStore.get("/"); // Added in ctor
+        return getNodeImpl(ROOT_ID); // Added in ctor
     }
 
 
@@ -118,20 +165,83 @@ public class SessionImpl implements Session {
 
     @Override
     public Node getNodeByUUID(String uuid) throws ItemNotFoundException, RepositoryException {
-        return null;  //TODO: Implement IDs
+        return getNodeByIdentifier(uuid);
     }
 
 
+    /**
+     * Looks the node up by its UUID, whose node id is computed back from it in constant time.  Since {@link
+     * NodeImpl#getIdentifier()} returns the path of a node that is not referenceable, any other identifier is looked
+     * up as a path.
+     */
     @Override
     public Node getNodeByIdentifier(String id) throws ItemNotFoundException, RepositoryException {
-        return null;  //TODO: Implement IDs
+        UUID uuid = parseUUID(id);
+        if (uuid == null) {
+            ItemImpl item = getItemImpl(id);
+            if (item == null || !item.isNode()) throw new ItemNotFoundException(id);
+            return (Node)item;
+        }
+        int found = Identifiers.lookup(seed, uuid);
+        NodeImpl node = found != Identifiers.NOT_FOUND && view().get(found) != null ? getNodeImpl(found) : null;
+        if (node == null) throw new ItemNotFoundException(id);
+        return node;
+    }
+
+
+    /**
+     * Returns the properties that refer to the node, from the index of references.  This is O(number of properties
+     * that refer to the node), and the properties are only created as the iterator gets to them.
+     *
+     * @param node The node
+     * @param name The name the properties must have, or null for any name
+     * @param weak If the WEAKREFERENCE properties should be returned, rather than the REFERENCE ones
+     */
+    @Nonnull
+    PropertyIterator getReferences(@Nonnull NodeImpl node, @Nullable String name, boolean weak) {
+        if (hasUnpublishedChanges()) {
+            lock();
+            try {
+                return getReferences(node, name, weak);
+            }
+            finally {
+                unlock();
+            }
+        }
+        IntTrie<NodeState> view;
+        IntTrie<Referrer[]> index;
+        if (writeLock == null || writeLock.isHeldByCurrentThread()) {
+            view = states;
+            index = references;
+        }
+        else {
+            Snapshot current = getPublished();
+            view = current.states;
+            index = current.references;
+        }
+        NodeState state = view.get(node.id);
+        final List<Referrer> referrers = state != null ? References.lookup(index, getUUID(node.id).toString(), weak, name) : Collections.<Referrer>emptyList();
+        return new PropertyIteratorImpl(new AbstractList<Property>() {
+            @Override
+            public Property get(int index) {
+                Referrer referrer = referrers.get(index);
+                return new PropertyImpl(getNodeImpl(referrer.nodeId), referrer.key);
+            }
+
+
+            @Override
+            public int size() {
+                return referrers.size();
+            }
+        });
     }
 
 
     @Override
     public Item getItem(String absPath) throws PathNotFoundException {
-        if (!itemExists(absPath)) throw new PathNotFoundException();
-        return getItemImpl(absPath);
+        ItemImpl item = getItemImpl(absPath);
+        if (item == null) throw new PathNotFoundException();
+        return item;
     }
 
 
@@ -149,63 +259,144 @@ public class SessionImpl implements Session {
 
     @Override
     public boolean itemExists(String absPath) {
-        return itemStore.containsKey(absPath);
+        return getEntry(view(), Path.of(absPath)) != null;
     }
 
 
     @Override
     public boolean nodeExists(String absPath) {
-        return itemExists(absPath) && itemStore.get(absPath).isNode();
+        return NodeState.isNode(getEntry(view(), Path.of(absPath)));
     }
 
 
     @Override
     public boolean propertyExists(String absPath) {
-        return itemExists(absPath) && !itemStore.get(absPath).isNode();
+        Object entry = getEntry(view(), Path.of(absPath));
+        return entry != null && !NodeState.isNode(entry);
     }
 
 
     @Override
     public void move(String srcAbsPath, String destAbsPath) throws ItemExistsException, PathNotFoundException, VersionException, ConstraintViolationException, LockException, RepositoryException {
-        if (!nodeExists(Paths.parent(srcAbsPath))) throw new PathNotFoundException();
-        if (!nodeExists(Paths.parent(destAbsPath))) throw new PathNotFoundException();
-        if (itemExists(destAbsPath)) throw new ItemExistsException();
-
-        // Can't modify a map while iterating over it.  So, put the keys that need to me moved into a list while
-        // iterating over the map and then iterate over the list
-        List<String> keys = new ArrayList<>();
-
-        for (String key : itemStore.keySet())
-            if (key.startsWith(srcAbsPath))
-                keys.add(key);
-
-        for (String key : keys)
-            moveItem(key, key.replaceFirst("^" + srcAbsPath, destAbsPath));
+        lock();
+        try {
+            Path dest = Path.of(destAbsPath);
+            int id = getItemId(states, ROOT_ID, Path.of(srcAbsPath));
+            int srcParentId = id != NO_ITEM ? states.get(id).parentId : NodeState.NO_PARENT;
+            int destParentId = getParentId(states, dest);
+            if (srcParentId == NodeState.NO_PARENT || destParentId == NO_ITEM) throw new PathNotFoundException();
+            if (getEntry(states, dest) != null) throw new ItemExistsException();
+            for (int ancestor = destParentId; ancestor != NodeState.NO_PARENT; ancestor = states.get(ancestor).parentId)
+                if (ancestor == id) throw new RepositoryException("Can not move " + srcAbsPath + " below itself");
+
+            // Only the root of the subtree is relinked. The paths of its descendants are derived from their parents, so
+            // bumping the structure version is enough to have them recomputed on their next use.
+            NodeState moved = edit(id);
+            edit(srcParentId).children.remove(keyOf(moved));
+            moved.parentId = destParentId;
+            moved.name = Interners.NAMES.intern(dest.getName());
+            moved.relative = !dest.isAbsolute();
+            edit(destParentId).children.put(Interners.NAMES.intern(keyOf(moved)), id);
+            link(id);
+            structureVersion++;
+
+            changeItem(id);
+            changeItem(srcParentId);
+            changeItem(destParentId);
+        }
+        finally {
+            unlock();
+        }
     }
 
 
     @Override
-    public void removeItem(String absPath) {
-        if (itemExists(absPath))
-            removeItem(getItemImpl(absPath));
+    public void removeItem(String absPath) throws InvalidItemStateException {
+        lock();
+        try {
+            ItemImpl item = getItemImpl(absPath);
+            if (item != null)
+                removeItem(item);
+        }
+        finally {
+            unlock();
+        }
     }
 
 
+    /**
+     * Makes the pending changes the saved content of the session.  This is O(1): the pending changes already form a
+     * complete tree that shares the unchanged items with the saved one.
+     * <p/>
+     * A session of a repository that hands every login its own session commits its changes on top of the latest
+     * revision of the repository instead, in O(number of changed items), and reads that revision from then on.
+     *
+     * @throws InvalidItemStateException If another session saved a change to one of the changed items since this
+     *                                   session read them.  The pending changes are kept.
+     */
     @Override
-    public void save() {
-        addedItems.clear();
-        changedItems.clear();
+    public void save() throws InvalidItemStateException {
+        lock();
+        try {
+            if (revisions != null) {
+                saved = revisions.commit(touched, states);
+                states = saved.states;
+                references = saved.references;
+                structureVersion++; // other sessions may have moved items
+            }
+            else {
+                saved = new Snapshot(states, references, nextId, seed);
+            }
+            owner = new Object(); // the saved states must not be edited in place
+            addedItems.clear();
+            changedItems.clear();
+            removedItems.clear();
+            touched.clear();
+            dirty.clear();
+            if (writeLock != null) publish();
+        }
+        finally {
+            unlock();
+        }
     }
 
 
+    /**
+     * Discards the pending changes unless keepChanges is true.  This is O(number of pending changes): the saved tree
+     * is kept aside, so it only has to be made current again.  Items that were added since the last save are no
+     * longer part of the session afterwards; they only keep the state they last had.
+     * <p/>
+     * A session of a repository that hands every login its own session moves on to the latest revision of the
+     * repository when it discards its changes.  When it keeps them, it keeps reading the revision it started from.
+     */
     @Override
     public void refresh(boolean keepChanges) throws RepositoryException {
+        if (keepChanges) return;
+        lock();
+        try {
+            for (int id : addedItems) {
+                NodeImpl handedOut = items.remove(id);
+                if (handedOut != null) handedOut.detach();
+            }
+            if (revisions != null) saved = revisions.snapshot();
+            states = saved.states;
+            references = saved.references;
+            structureVersion++; // moves are undone as well
+            addedItems.clear();
+            changedItems.clear();
+            removedItems.clear();
+            touched.clear();
+            dirty.clear();
+        }
+        finally {
+            unlock();
+        }
     }
 
 
     @Override
     public boolean hasPendingChanges() {
-        return !addedItems.isEmpty() || !changedItems.isEmpty();
+        return !addedItems.isEmpty() || !changedItems.isEmpty() || !removedItems.isEmpty();
     }
 
 
@@ -326,101 +517,1077 @@ public class SessionImpl implements Session {
     }
 
 
+    /**
+     * Takes a snapshot of the content of this session, including the changes that have not been saved yet.  This is an
+     * O(1) operation: the snapshot shares its state with the session, and the session copies whatever it changes
+     * afterwards.
+     *
+     * @return The snapshot
+     */
+    @Nonnull
+    public Snapshot snapshot() {
+        lock();
+        try {
+            owner = new Object(); // everything built so far is shared from now on
+            return new Snapshot(states, references, revisions != null ? revisions.snapshot().nextId : nextId, seed);
+        }
+        finally {
+            unlock();
+        }
+    }
+
+
+    /**
+     * Creates a new session with the same content as this one.  The sessions are independent: changes made in one
+     * of them are never seen in the other.  The new session starts without pending changes.
+     *
+     * @return The new session
+     */
+    @Nonnull
+    public SessionImpl fork() {
+        return new SessionImpl(repository, snapshot(), isConcurrent(), null, nodeTypes);
+    }
+
+
+    /**
+     * Returns true if this session can be used by several threads at the same time.
+     *
+     * @see #SessionImpl(Repository, boolean)
+     */
+    public boolean isConcurrent() {
+        return writeLock != null;
+    }
+
+
     /* The following methods are package private and implement the functionality used to implement the various
      * features of the jackrabbit project.
      */
-    Item addItem(@Nonnull ItemImpl item) throws ItemNotFoundException, ItemExistsException {
-        if (itemStore.containsKey(item.getPath())) throw new ItemExistsException();
-        addedItems.add(item.getPath());
-        return storeItem(item);
+
+    /**
+     * Stores a new node at the given path.
+     *
+     * @return The id of the new node
+     */
+    int addNode(@Nonnull NodeImpl node, @Nonnull Path path) throws ItemNotFoundException, ItemExistsException {
+        lock();
+        try {
+            int parentId = NodeState.NO_PARENT;
+            String key = null;
+            if (path.isRoot()) {
+                if (states.get(ROOT_ID) != null) throw new ItemExistsException(path.toString());
+            }
+            else {
+                parentId = getParentId(states, path);
+                if (parentId == NO_ITEM) throw new ItemNotFoundException(String.valueOf(path.getParent()));
+                key = Interners.NAMES.intern(keyOf(parentId, path));
+                if (states.get(parentId).children.containsKey(key)) throw new ItemExistsException(path.toString());
+            }
+            int id = revisions != null ? revisions.allocateId() : nextId++;
+            NodeState state = new NodeState(owner);
+            if (key != null) {
+                state.parentId = parentId;
+                state.name = Interners.NAMES.intern(path.getName());
+                state.relative = !path.isAbsolute();
+                edit(parentId).children.put(key, id);
+            }
+            states = states.put(id, state, owner);
+            touch(id, null);
+            items.put(id, node);
+            addedItems.add(id);
+            return id;
+        }
+        finally {
+            unlock();
+        }
     }
 
 
-    Item changeItem(@Nonnull ItemImpl item) throws ItemNotFoundException {
-        if (!addedItems.contains(item.getPath()))
-            changedItems.add(item.getPath());
-        return storeItem(item);
+    /**
+     * Stores a new property, without a value, at the given path.  The property is kept inline in its parent, so this
+     * only adds an entry to the parent's state.
+     *
+     * @return The parent of the new property
+     */
+    @Nonnull
+    NodeImpl addProperty(@Nonnull Path path) throws ItemNotFoundException, ItemExistsException {
+        lock();
+        try {
+            if (path.isRoot()) throw new ItemExistsException(path.toString());
+            int parentId = getParentId(states, path);
+            if (parentId == NO_ITEM) throw new ItemNotFoundException(String.valueOf(path.getParent()));
+            String key = Interners.NAMES.intern(keyOf(parentId, path));
+            if (states.get(parentId).children.containsKey(key)) throw new ItemExistsException(path.toString());
+            edit(parentId).children.put(key, NodeState.NO_VALUE);
+            changeItem(parentId);
+            return getNodeImpl(parentId);
+        }
+        finally {
+            unlock();
+        }
     }
 
 
-    Item removeItem(@Nonnull ItemImpl item) {
-        changedItems.add(item.getParentImpl().getPath());
-        for (ItemImpl descendant : getDescendants(item))
-            itemStore.remove(descendant.getPath());
-        itemStore.remove(item.getPath());
-        return item;
+    /**
+     * Returns the property at the path relative to the node, adding it without a value if there is none.  The lookup
+     * and the add are one change, so that concurrent callers that set the same new property do not clash.
+     *
+     * @throws ItemExistsException If there is a node at the path
+     */
+    @Nonnull
+    PropertyImpl getOrAddProperty(@Nonnull NodeImpl node, @Nonnull String relPath) throws RepositoryException {
+        lock();
+        try {
+            ItemImpl item = getItemImpl(node, relPath);
+            if (item != null && !item.isNode()) return (PropertyImpl)item;
+            return new PropertyImpl(this, node.toPath().resolve(relPath));
+        }
+        finally {
+            unlock();
+        }
     }
 
 
-    private ItemImpl getItemImpl(String absPath) {
-        return itemStore.get(absPath);
+    Item changeItem(@Nonnull NodeImpl node) {
+        changeItem(node.id);
+        return node;
     }
 
 
-    private Item storeItem(@Nonnull ItemImpl item) throws ItemNotFoundException {
-        itemStore.put(item.getPath(), item);
-        return item;
+    private void changeItem(int id) {
+        if (!addedItems.contains(id))
+            changedItems.add(id);
+    }
+
+
+    Item removeItem(@Nonnull ItemImpl item) throws InvalidItemStateException {
+        lock();
+        try {
+            if (!item.isNode()) {
+                removeProperty((PropertyImpl)item);
+                return item;
+            }
+            int nodeId = ((NodeImpl)item).id;
+            NodeState state = states.get(nodeId);
+            if (state == null || state.parentId == NodeState.NO_PARENT) return item;
+            changeItem(state.parentId);
+            edit(state.parentId).children.remove(keyOf(state));
+
+            List<Integer> removed = getDescendantIds(nodeId);
+            removed.add(nodeId);
+            for (int id : removed) {
+                NodeImpl handedOut = items.remove(id);
+                if (handedOut != null) handedOut.detach();
+            }
+            structureVersion++; // the removed nodes must not hold on to their parents
+            for (int id : removed) {
+                if (!addedItems.contains(id)) removedItems.add(id);
+                forgetChanges(id);
+                if (!touched.containsKey(id)) touch(id, states.get(id));
+                references = References.update(references, id, states.get(id), null, owner);
+                states = states.put(id, null, owner);
+            }
+            return item;
+        }
+        finally {
+            unlock();
+        }
+    }
+
+
+    private void removeProperty(PropertyImpl property) {
+        NodeState parent = states.get(property.parent.id);
+        if (parent == null || !parent.hasProperty(property.key)) return;
+        references = References.change(references, property.parent.id, property.key, parent.children.get(property.key), null, owner);
+        edit(property.parent.id).children.remove(property.key);
+        changeItem(property.parent.id);
+    }
+
+
+    /**
+     * Moves a child node of the parent in front of another one, or to the end.  This is O(1), apart from copying the
+     * parent's state the first time it changes.
+     *
+     * @param parent   The parent
+     * @param srcPath  The path of the child node to move
+     * @param destPath The path of the child node to move it in front of, or null to move it to the end
+     * @throws ItemNotFoundException If either path is not the path of a child node of the parent
+     */
+    void orderBefore(@Nonnull NodeImpl parent, @Nonnull String srcPath, @Nullable String destPath) throws ItemNotFoundException, InvalidItemStateException {
+        lock();
+        try {
+            NodeState state = states.get(parent.id);
+            if (state == null) throw new InvalidItemStateException(parent.getPath() + " has been removed");
+            if (!isChildNode(parent.id, srcPath)) throw new ItemNotFoundException(srcPath);
+            if (destPath != null && !isChildNode(parent.id, destPath)) throw new ItemNotFoundException(destPath);
+            String srcKey = keyOf(parent.id, srcPath);
+            String destKey = destPath != null ? keyOf(parent.id, destPath) : null;
+            if (srcKey.equals(destKey)) return;
+            edit(parent.id).children.orderBefore(srcKey, destKey);
+            changeItem(parent.id);
+        }
+        finally {
+            unlock();
+        }
+    }
+
+
+    private boolean isChildNode(int parentId, String path) {
+        Path childPath = Path.of(path);
+        return getParentId(states, childPath) == parentId && states.get(parentId).getNodeId(keyOf(parentId, childPath)) != null;
+    }
+
+
+    /**
+     * Returns the current state of the node with the given id.
+     *
+     * @return The state, or null if there is no such node (anymore)
+     */
+    @Nullable
+    NodeState getState(int id) {
+        return view().get(id);
+    }
+
+
+    /**
+     * Returns the UUID of the node with the given id.  It is derived from the id rather than stored, see {@link
+     * Identifiers#generate(long, int)}.
+     */
+    @Nonnull
+    UUID getUUID(int id) {
+        return Identifiers.generate(seed, id);
+    }
+
+
+    /**
+     * Returns the current entry of a property in its parent: its Value, its Value[] if it is multi-valued, or
+     * NO_VALUE.
+     *
+     * @return The entry, or null if there is no such property (anymore)
+     */
+    @Nullable
+    Object getPropertyEntry(int parentId, @Nonnull String key) {
+        return getPropertyEntry(view(), parentId, key);
+    }
+
+
+    @Nullable
+    private static Object getPropertyEntry(IntTrie<NodeState> states, int parentId, String key) {
+        NodeState parent = states.get(parentId);
+        Object entry = parent != null ? parent.children.get(key) : null;
+        return NodeState.isNode(entry) ? null : entry;
+    }
+
+
+    /**
+     * Sets the value, or the values, of a property.
+     *
+     * @throws InvalidItemStateException If the property has been removed
+     */
+    void setValue(@Nonnull PropertyImpl property, @Nullable Value value, @Nullable Value[] values) throws InvalidItemStateException {
+        lock();
+        try {
+            int parentId = property.parent.id;
+            NodeState parent = states.get(parentId);
+            if (parent == null || !parent.hasProperty(property.key)) throw new InvalidItemStateException(property.getPath() + " has been removed");
+            Object entry = values != null ? values : value != null ? value : NodeState.NO_VALUE;
+            references = References.change(references, parentId, property.key, parent.children.get(property.key), entry, owner);
+            edit(parentId).children.put(property.key, entry);
+            changeItem(parentId);
+        }
+        finally {
+            unlock();
+        }
+    }
+
+
+    /**
+     * Returns the state of the node with the given id, ready to be modified.  The state is copied first if it is
+     * shared with a snapshot or with the readers of a concurrent session.
+     */
+    private NodeState edit(int id) {
+        if (!touched.containsKey(id)) touch(id, states.get(id));
+        return own(id);
+    }
+
+
+    /**
+     * Returns the state that the pending changes of the node are based on: the state it had when it was first changed,
+     * or the state the session reads if it has not been changed.  This may be older than the saved state after another
+     * session's changes came in with a partial save, so that those changes are detected as conflicts.
+     */
+    @Nullable
+    private NodeState getBaseState(int id) {
+        return touched.containsKey(id) ? touched.get(id) : states.get(id);
+    }
+
+
+    /**
+     * Returns the state of the node with the given id, copied first if this session does not own it, without marking
+     * the node as changed.
+     */
+    private NodeState own(int id) {
+        NodeState state = states.get(id);
+        if (state.owner != owner) {
+            state = state.copy(owner);
+            states = states.put(id, state, owner);
+        }
+        return state;
+    }
+
+
+    /**
+     * Returns the current state of the node, owned by this session, so that what is resolved from its content can be
+     * kept in it (see {@link NodeImpl#getMixinTypes()}).  This does not change the content of the node.
+     *
+     * @return The state, or null if there is no such node, or if the current thread is only reading a concurrent
+     * session and so can not own states
+     */
+    @Nullable
+    NodeState getCacheableState(int id) {
+        if (hasUnpublishedChanges()) {
+            lock();
+            try {
+                return getCacheableState(id);
+            }
+            finally {
+                unlock();
+            }
+        }
+        if (writeLock != null && !writeLock.isHeldByCurrentThread()) return null;
+        return states.get(id) != null ? own(id) : null;
+    }
+
+
+    /**
+     * Records the saved state of a node that is about to change, and adds the node to the dirty index.
+     */
+    private void touch(int id, @Nullable NodeState savedState) {
+        touched.put(id, savedState);
+        dirty.mark(id);
+        link(id);
+    }
+
+
+    /**
+     * Links the node, and the ancestors that are not linked yet, to their current parents in the dirty index.
+     */
+    private void link(int id) {
+        for (NodeState state = states.get(id); state != null && state.parentId != NodeState.NO_PARENT; state = states.get(id)) {
+            if (!dirty.link(id, state.parentId)) return;
+            id = state.parentId;
+        }
+    }
+
+
+    /**
+     * Marks the node as clean again.
+     */
+    private void untouch(int id) {
+        forgetChanges(id);
+        touched.remove(id);
+        dirty.remove(id);
+    }
+
+
+    /**
+     * Returns the node with the given id, creating the Node for it the first time it is asked for.
+     *
+     * @return The node, or null if there is no such node (anymore)
+     */
+    @Nullable
+    NodeImpl getNodeImpl(int id) {
+        NodeImpl node = items.get(id);
+        if (node == null) {
+            if (view().get(id) == null) return null;
+            node = new NodeImpl(this, id);
+            NodeImpl concurrentlyCreated = items.putIfAbsent(id, node);
+            if (concurrentlyCreated != null) node = concurrentlyCreated;
+        }
+        return node;
+    }
+
+
+    /**
+     * Returns the item at the given path.  Properties are created on demand, as views on the entry in their parent.
+     */
+    @Nullable
+    private ItemImpl getItemImpl(String path) {
+        return getItemImpl(Path.of(path));
+    }
+
+
+    @Nullable
+    private ItemImpl getItemImpl(Path path) {
+        if (path.isRoot()) return getNodeImpl(ROOT_ID);
+        IntTrie<NodeState> view = view();
+        int parentId = getParentId(view, path);
+        if (parentId == NO_ITEM) return null;
+        return getChild(view.get(parentId), parentId, keyOf(parentId, path));
+    }
+
+
+    /**
+     * Returns the item at the path relative to the node.  The path is walked down from the node's own state, without
+     * going through the path of the node, which another thread may be changing.  Only a path that goes up above the
+     * node ("../sibling") is resolved against the path of the node.
+     */
+    @Nullable
+    ItemImpl getItemImpl(@Nonnull NodeImpl node, @Nonnull String relPath) throws InvalidItemStateException {
+        if (Paths.isAbsolute(relPath)) return getItemImpl(Path.of(relPath));
+        IntTrie<NodeState> view = view();
+        NodeState state = view.get(node.id);
+        if (state == null) return null;
+        if (!relPath.contains(Paths.SEPARATOR) && !relPath.equals(".") && !relPath.equals(".."))
+            return getChild(state, node.id, keyOf(node.id, relPath, false));
+        Path path = node.id == ROOT_ID ? Path.ROOT.resolve(relPath) : Path.of(relPath);
+        if (path.getDepth() == 0) return node;
+        if (!path.isAbsolute() && path.getAncestor(1).getName().equals("..")) return getItemImpl(node.toPath().resolve(relPath));
+        int parentId = getItemId(view, node.id, path.getParent());
+        return parentId != NO_ITEM ? getChild(view.get(parentId), parentId, keyOf(parentId, path)) : null;
+    }
+
+
+    @Nullable
+    private ItemImpl getChild(NodeState parent, int parentId, String key) {
+        Object entry = parent.children.get(key);
+        if (entry == null) return null;
+        if (NodeState.isNode(entry)) return getNodeImpl((Integer)entry);
+        NodeImpl node = getNodeImpl(parentId);
+        return node != null ? new PropertyImpl(node, key) : null;
+    }
+
+
+    /**
+     * Returns the entry of the item at the given path in its parent: the id of a node, or the value of a property.
+     *
+     * @return The entry, or null if there is no item at that path
+     */
+    @Nullable
+    private static Object getEntry(IntTrie<NodeState> states, Path path) {
+        if (path.isRoot()) return ROOT_ID;
+        int parentId = getParentId(states, path);
+        return parentId != NO_ITEM ? states.get(parentId).children.get(keyOf(parentId, path)) : null;
+    }
+
+
+    /**
+     * Looks the node up by walking down the tree from a node, one path segment at a time.
+     *
+     * @param states The tree to look in
+     * @param baseId The id of the node the path starts at
+     * @param path   The path of the node below the base node. If the base node is the root, this is the absolute path
+     *               of the node or its path relative to the root.
+     * @return The id of the node, or NO_ITEM if there is no node at that path
+     */
+    private static int getItemId(IntTrie<NodeState> states, int baseId, Path path) {
+        if (path.getDepth() == 0) return baseId;
+        int parentId = getItemId(states, baseId, path.getParent());
+        if (parentId == NO_ITEM) return NO_ITEM;
+        Integer id = states.get(parentId).getNodeId(keyOf(parentId, path));
+        return id != null ? id : NO_ITEM;
+    }
+
+
+    /**
+     * Returns the id of the node that is, or would be, the parent of the item at the given path.
+     */
+    private static int getParentId(IntTrie<NodeState> states, Path path) {
+        return path.getDepth() <= 1 ? ROOT_ID : getItemId(states, ROOT_ID, path.getParent());
+    }
+
+
+    /**
+     * Returns the key that the item has in its parent's children.  Top level items are keyed on their full path so
+     * that relative ("node") and absolute ("/node") top level items can both live under the root, just as they could
+     * when items were stored by path.
+     */
+    private static String keyOf(NodeState state) {
+        return keyOf(state.parentId, state.name, state.relative);
+    }
+
+
+    /**
+     * Returns the key of the item at the path.  The key of a top level item is the string form of its path, which the
+     * path keeps, so no string is built.
+     */
+    static String keyOf(int parentId, Path path) {
+        return parentId == ROOT_ID && path.getDepth() == 1 ? path.toString() : keyOf(parentId, path.getName(), !path.isAbsolute());
+    }
+
+
+    static String keyOf(int parentId, String path) {
+        return keyOf(parentId, Paths.basename(path), !Paths.isAbsolute(path));
+    }
+
+
+    static String keyOf(int parentId, String name, boolean relative) {
+        return parentId != ROOT_ID ? name :
+            relative ? name : Paths.SEPARATOR + name;
+    }
+
+
+    int getStructureVersion() {
+        if (hasUnpublishedChanges()) {
+            lock();
+            try {
+                return structureVersion;
+            }
+            finally {
+                unlock();
+            }
+        }
+        if (writeLock == null || writeLock.isHeldByCurrentThread()) return structureVersion;
+        getPublished();
+        return publishedStructureVersion;
     }
 
 
-    private void moveItem(String src, String dest) {
-        ItemImpl item = itemStore.get(src);
-        item.setPath(dest);
-        itemStore.put(dest, item);
-        itemStore.remove(src);
+    private void forgetChanges(int id) {
+        addedItems.remove(id);
+        changedItems.remove(id);
+        removedItems.remove(id);
     }
 
 
-    private List<ItemImpl> getDescendants(ItemImpl item) {
-        List<ItemImpl> descendants = new ArrayList<>();
-        for (String key : itemStore.keySet())
-            if (Paths.ancestorOf(item.getPath(), key))
-                descendants.add(itemStore.get(key));
+    /**
+     * Returns the ids of the descendants of the item, parents before their children.  This walks the tree below the
+     * item, so it costs O(size of the subtree) regardless of the size of the session.
+     */
+    private List<Integer> getDescendantIds(int id) {
+        List<Integer> descendants = new ArrayList<>();
+        collectDescendantIds(id, descendants);
         return descendants;
     }
 
 
+    private void collectDescendantIds(int id, List<Integer> descendants) {
+        NodeState state = states.get(id);
+        if (state == null) return;
+        for (Object child : state.children.values())
+            if (NodeState.isNode(child)) {
+                descendants.add((Integer)child);
+                collectDescendantIds((Integer)child, descendants);
+            }
+    }
+
+
     List<Item> getChildren(Item parent) {
         List<Item> children = new ArrayList<>();
-        for (ItemImpl item : itemStore.values())
-            if (item.getParentImpl() == parent)
-                children.add(item);
+        if (!parent.isNode()) return children;
+        NodeImpl node = (NodeImpl)parent;
+        NodeState state = view().get(node.id);
+        if (state != null)
+            for (Map.Entry<String, Object> child : state.children.entrySet())
+                children.add(NodeState.isNode(child.getValue()) ? getNodeImpl((Integer)child.getValue()) : new PropertyImpl(node, child.getKey()));
         return children;
     }
 
 
+    /**
+     * Returns the entries of the child nodes or the properties of the node whose names match the pattern, without
+     * copying the children of the node.  The entries are in the order of the children.  The names of a pattern
+     * without wildcards are looked up directly, and the children are only gone through up to the last match to put
+     * several matches in order; otherwise the entries are a view of the children.
+     *
+     * @param node    The node
+     * @param pattern The pattern, or null for all children
+     * @param nodes   If child nodes should be returned, rather than properties
+     */
+    @Nonnull
+    Collection<Map.Entry<String, Object>> getChildEntries(@Nonnull NodeImpl node, @Nullable NamePattern pattern, boolean nodes) {
+        if (pattern != null && pattern.isExact()) {
+            NodeState state = view().get(node.id);
+            if (state == null) return Collections.emptyList();
+            Map<String, Object> matches = new HashMap<>();
+            for (String name : pattern.getNames()) {
+                String key = keyOf(node.id, name, false);
+                Object entry = state.children.get(key);
+                if (entry != null && NodeState.isNode(entry) == nodes) matches.put(key, entry);
+            }
+            if (matches.size() <= 1) return matches.entrySet();
+            List<Map.Entry<String, Object>> children = new ArrayList<>(matches.size());
+            for (Map.Entry<String, Object> child : state.children.entrySet()) {
+                if (!matches.containsKey(child.getKey())) continue;
+                children.add(new AbstractMap.SimpleImmutableEntry<>(child.getKey(), child.getValue()));
+                if (children.size() == matches.size()) break;
+            }
+            return children;
+        }
+        NodeState state = getStableState(node.id);
+        return state != null ? new ChildEntries(this, state, nodes, pattern) : Collections.<Map.Entry<String, Object>>emptyList();
+    }
+
+
+    /**
+     * Returns the current state of the node, for a view that iterates over its children.  The state is marked as
+     * shared, so the session copies it before it changes it from now on and the view may keep using it.  No other
+     * state is affected.
+     */
+    @Nullable
+    private NodeState getStableState(int id) {
+        if (hasUnpublishedChanges()) {
+            lock();
+            try {
+                return getStableState(id);
+            }
+            finally {
+                unlock();
+            }
+        }
+        if (writeLock != null && !writeLock.isHeldByCurrentThread()) return getPublished().states.get(id);
+        NodeState state = states.get(id);
+        if (state != null && state.owner == owner) state.share();
+        return state;
+    }
+
+
+    /**
+     * Returns true if the node has child nodes, or properties.
+     */
+    boolean hasChildren(@Nonnull NodeImpl node, boolean nodes) {
+        NodeState state = view().get(node.id);
+        if (state == null) return false;
+        return (nodes ? state.children.getNodeCount() : state.children.getPropertyCount()) > 0;
+    }
+
+
     public SessionImpl() {
-        this(null);
+        this((Repository)null);
     }
 
 
     public SessionImpl(Repository repository) {
-        this.repository = repository;
+        this(repository, false);
+    }
+
+
+    /**
+     * Creates an empty session.
+     * <p/>
+     * A concurrent session can be used by several threads at the same time.  Reads never block: they see the content
+     * as of the last completed change, or as of the last save while another thread is making a change.  Changes are
+     * made one at a time, and each of them is only published to the other threads once it is complete.
+     *
+     * @param repository The repository the session belongs to
+     * @param concurrent Whether the session can be used by several threads at the same time
+     */
+    public SessionImpl(Repository repository, boolean concurrent) {
+        this(repository, new Snapshot(IntTrie.<NodeState>empty(), IntTrie.<Referrer[]>empty(), ROOT_ID, Identifiers.newSeed()), concurrent);
         try {
-            addItem(new NodeImpl(this, "/"));
+            new NodeImpl(this, "/");
+            save();
         }
         catch (RepositoryException re) { /* can't happen */ }
-        save();
     }
 
 
-    void save(ItemImpl item) {
-        String path = item.getPath();
-        for (Iterator<String> i = addedItems.iterator(); i.hasNext(); )
-            if (Paths.selfOrAncestorOf(path, i.next()))
-                i.remove();
-        for (Iterator<String> i = changedItems.iterator(); i.hasNext(); )
-            if (Paths.selfOrAncestorOf(path, i.next()))
-                i.remove();
+    /**
+     * Creates a session with the content of the snapshot.
+     *
+     * @param repository The repository the session belongs to
+     * @param snapshot   The content of the session
+     */
+    public SessionImpl(Repository repository, @Nonnull Snapshot snapshot) {
+        this(repository, snapshot, false);
+    }
+
+
+    /**
+     * Creates a session with the content of the snapshot.
+     *
+     * @param repository The repository the session belongs to
+     * @param snapshot   The content of the session
+     * @param concurrent Whether the session can be used by several threads at the same time
+     */
+    public SessionImpl(Repository repository, @Nonnull Snapshot snapshot, boolean concurrent) {
+        this(repository, snapshot, concurrent, (RevisionStore)null);
+    }
+
+
+    /**
+     * Creates a session that reads the latest revision of the store and saves its changes to it.
+     *
+     * @param repository The repository the session belongs to
+     * @param revisions  The saved content of the repository
+     */
+    SessionImpl(Repository repository, @Nonnull RevisionStore revisions) {
+        this(repository, revisions.snapshot(), false, revisions);
+    }
+
+
+    private SessionImpl(Repository repository, Snapshot snapshot, boolean concurrent, @Nullable RevisionStore revisions) {
+        this(repository, snapshot, concurrent, revisions,
+            repository instanceof RepositoryImpl ? ((RepositoryImpl)repository).getNodeTypeManager() : new NodeTypeManagerImpl());
+    }
+
+
+    private SessionImpl(Repository repository, Snapshot snapshot, boolean concurrent, @Nullable RevisionStore revisions, NodeTypeManagerImpl nodeTypes) {
+        this.repository = repository;
+        this.nodeTypes = nodeTypes;
+        this.writeLock = concurrent ? new ReentrantLock() : null;
+        this.revisions = revisions;
+        this.saved = snapshot;
+        this.states = snapshot.states;
+        this.references = snapshot.references;
+        this.published = snapshot;
+        this.nextId = snapshot.nextId;
+        this.seed = snapshot.seed;
+        this.addedItems = newIdSet(concurrent);
+        this.changedItems = newIdSet(concurrent);
+        this.removedItems = newIdSet(concurrent);
+    }
+
+
+    @Nullable
+    private static UUID parseUUID(String id) {
+        try {
+            return UUID.fromString(id);
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+
+    private static Set<Integer> newIdSet(boolean concurrent) {
+        return concurrent ? Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>()) : new LinkedHashSet<Integer>();
+    }
+
+
+    /**
+     * Returns the tree that the current thread should read from: a thread that is making a change, or that made the
+     * changes that have not been published yet, sees the changes; all others see the last published tree.
+     */
+    private IntTrie<NodeState> view() {
+        if (hasUnpublishedChanges()) {
+            lock();
+            try {
+                return states;
+            }
+            finally {
+                unlock();
+            }
+        }
+        return writeLock == null || writeLock.isHeldByCurrentThread() ? states : getPublished().states;
+    }
+
+
+    /**
+     * Returns true if the current thread made the changes to a concurrent session that have not been published yet,
+     * and is not making a change right now.  It reads them under the lock, so that no other thread can start a change
+     * in the meantime.
+     */
+    private boolean hasUnpublishedChanges() {
+        return writeLock != null && writer == Thread.currentThread() && !writeLock.isHeldByCurrentThread();
+    }
+
+
+    /**
+     * Returns the published tree, for a thread that only reads a concurrent session.  If another thread made changes
+     * that have not been published yet, and is not making a change right now, they are published first.
+     */
+    private Snapshot getPublished() {
+        if (writer != null && writeLock.tryLock()) {
+            try {
+                if (writer != null) publish();
+            }
+            finally {
+                writeLock.unlock();
+            }
+        }
+        return published;
+    }
+
+
+    /**
+     * Starts a change.  If another thread made the last changes to a concurrent session, they are published first, so
+     * that this change never edits a state in place that the other thread may still be reading.
+     */
+    private void lock() {
+        if (writeLock == null) return;
+        writeLock.lock();
+        if (writer != null && writer != Thread.currentThread()) publish();
+    }
+
+
+    /**
+     * Ends a change.  The changes of a concurrent session are not published to the readers on other threads right
+     * away: the thread that made them keeps owning the states it changed until it saves, or until another thread
+     * reads or changes the session, so a series of changes by the same thread does not copy the same states over and
+     * over again.
+     */
+    private void unlock() {
+        if (writeLock == null) return;
+        if (writeLock.getHoldCount() == 1 && (states != published.states || references != published.references ||
+            structureVersion != publishedStructureVersion)) writer = Thread.currentThread();
+        writeLock.unlock();
+    }
+
+
+    /**
+     * Publishes the changes to the readers of a concurrent session, and makes everything in them shared so that it is
+     * never edited in place again.  The caller must hold the lock.
+     */
+    private void publish() {
+        owner = new Object();
+        published = new Snapshot(states, references, nextId, seed);
+        publishedStructureVersion = structureVersion;
+        writer = null;
+    }
+
+
+    /**
+     * Saves the pending changes of the item and its descendants, leaving all other pending changes alone.  The changed
+     * descendants are found in the dirty index, so this costs O(number of changes below the item), regardless of the
+     * number of other pending changes and of the size of the subtree.
+     *
+     * @throws InvalidItemStateException   If another session saved a change to one of the items in the meantime
+     * @throws ConstraintViolationException If the changes can not be saved without changes outside the item: a node
+     *                                      was moved or removed from a parent, or added or moved to a parent, that is
+     *                                      not saved with it
+     */
+    void save(ItemImpl item) throws InvalidItemStateException, ConstraintViolationException {
+        lock();
+        try {
+            if (item.isNode())
+                saveNode(((NodeImpl)item).id);
+            else
+                saveProperty((PropertyImpl)item);
+        }
+        finally {
+            unlock();
+        }
+    }
+
+
+    private void saveNode(int nodeId) throws InvalidItemStateException, ConstraintViolationException {
+        NodeState state = states.get(nodeId);
+        if (state == null) return;
+        List<Integer> dirtyIds = dirty.getDirtyIds(nodeId);
+        checkSelfContained(nodeId, dirtyIds, saved.states.get(state.parentId) != null, "saved");
+
+        IntTrie<NodeState> newSaved = saved.states;
+        Map<Integer, NodeState> expected = new HashMap<>();
+        if (addedItems.contains(nodeId) && state.parentId != NodeState.NO_PARENT) {
+            // the parent may not be saved yet, so only link the node into the parent's saved state
+            NodeState parent = saved.states.get(state.parentId);
+            if (parent != null) {
+                expected.put(state.parentId, getBaseState(state.parentId));
+                parent = parent.copy(null);
+                parent.children.put(keyOf(state), nodeId);
+                newSaved = newSaved.put(state.parentId, parent, null);
+            }
+        }
+        for (int id : dirtyIds) {
+            expected.put(id, touched.get(id));
+            newSaved = newSaved.put(id, states.get(id), null);
+        }
+
+        commit(expected, newSaved);
+        for (int id : expected.keySet())
+            if (id != state.parentId) untouch(id);
+        if (touched.containsKey(state.parentId)) settle(state.parentId);
+    }
+
+
+    /**
+     * Checks that saving or reverting the dirty nodes leaves a consistent tree: every node that leaves or joins a
+     * parent must be saved or reverted together with that parent.  The one exception is a new node at the top of the
+     * changes, which can be linked into, or unlinked from, the state of its parent on its own.
+     *
+     * @param nodeId         The id of the node whose changes are saved or reverted
+     * @param dirtyIds       The dirty nodes at or below that node
+     * @param parentLinkable Whether a new node can be linked into, or unlinked from, its parent
+     * @param change         What happens to the changes, for the error message
+     */
+    private void checkSelfContained(int nodeId, List<Integer> dirtyIds, boolean parentLinkable, String change) throws InvalidItemStateException, ConstraintViolationException {
+        Set<Integer> included = new HashSet<>(dirtyIds);
+        for (int id : dirtyIds) {
+            NodeState state = states.get(id);
+            NodeState savedState = saved.states.get(id);
+            int parentId = state != null ? state.parentId : NodeState.NO_PARENT;
+            int savedParentId = savedState != null ? savedState.parentId : NodeState.NO_PARENT;
+            if (parentId != savedParentId) {
+                boolean linkedByParent = id == nodeId && savedState == null && parentLinkable;
+                if (parentId != NodeState.NO_PARENT && !included.contains(parentId) && !linkedByParent)
+                    throw new ConstraintViolationException(getPath(id) + " can not be " + change + " without its new parent");
+                if (savedParentId != NodeState.NO_PARENT && !included.contains(savedParentId))
+                    throw new ConstraintViolationException(getPath(id) + " can not be " + change + " without its old parent");
+            }
+            if (savedState != null) {
+                for (Object child : savedState.children.values()) {
+                    if (!NodeState.isNode(child) || included.contains(child)) continue;
+                    NodeState childState = states.get((Integer)child);
+                    if (childState == null || childState.parentId != id)
+                        throw new ConstraintViolationException(getPath(id) + " can not be " + change + " without the child that left it");
+                }
+            }
+        }
+    }
+
+
+    private String getPath(int id) throws InvalidItemStateException {
+        NodeImpl node = items.get(id);
+        return node != null ? node.getPath() : String.valueOf(id);
+    }
+
+
+    /**
+     * Saves the pending change of a single property: only its entry is copied into the saved state of its parent.
+     */
+    private void saveProperty(PropertyImpl property) throws InvalidItemStateException {
+        int parentId = property.parent.id;
+        NodeState state = states.get(parentId);
+        NodeState savedParent = saved.states.get(parentId);
+        if (state == null || savedParent == null) return; // the parent is new or gone, so the property has nowhere to go
+
+        Map<Integer, NodeState> expected = new HashMap<>();
+        expected.put(parentId, getBaseState(parentId));
+        NodeState parent = savedParent.copy(null);
+        Object entry = getPropertyEntry(states, parentId, property.key);
+        if (entry != null)
+            parent.children.put(property.key, entry);
+        else if (parent.hasProperty(property.key))
+            parent.children.remove(property.key);
+        commit(expected, saved.states.put(parentId, parent, null));
+        if (touched.containsKey(parentId)) settle(parentId);
+    }
+
+
+    /**
+     * Takes note that part of the pending changes of a node have been saved.  The node stays dirty unless it has no
+     * other pending changes.
+     */
+    private void settle(int id) {
+        NodeState savedState = saved.states.get(id);
+        if (isUnchanged(states.get(id), savedState))
+            untouch(id);
+        else
+            touched.put(id, savedState);
+    }
+
+
+    /**
+     * Discards the pending changes of the item and its descendants, leaving all other pending changes alone.  Like
+     * {@link #save(ItemImpl)}, this costs O(number of changes below the item).
+     *
+     * @throws InvalidItemStateException   If the item has been removed
+     * @throws ConstraintViolationException If the changes can not be discarded without changes outside the item: a
+     *                                      node was moved or removed from a parent, or added or moved to a parent,
+     *                                      that is not reverted with it
+     */
+    void refresh(ItemImpl item) throws InvalidItemStateException, ConstraintViolationException {
+        lock();
+        try {
+            if (item.isNode())
+                revertNode(((NodeImpl)item).id);
+            else
+                revertProperty((PropertyImpl)item);
+        }
+        finally {
+            unlock();
+        }
+    }
+
+
+    private void revertNode(int nodeId) throws InvalidItemStateException, ConstraintViolationException {
+        NodeState state = states.get(nodeId);
+        if (state == null) throw new InvalidItemStateException("The node has been removed");
+        List<Integer> dirtyIds = dirty.getDirtyIds(nodeId);
+        checkSelfContained(nodeId, dirtyIds, true, "reverted");
+
+        if (addedItems.contains(nodeId) && state.parentId != NodeState.NO_PARENT) {
+            // the parent may keep other changes, so only unlink the node from the parent's current state
+            edit(state.parentId).children.remove(keyOf(state));
+            changeItem(state.parentId);
+        }
+        for (int id : dirtyIds) {
+            NodeImpl handedOut = addedItems.contains(id) ? items.remove(id) : null;
+            if (handedOut != null) handedOut.detach();
+        }
+        for (int id : dirtyIds) {
+            NodeState savedState = touched.get(id);
+            references = References.update(references, id, states.get(id), savedState, owner);
+            states = states.put(id, savedState, owner);
+            untouch(id);
+        }
+        structureVersion++; // moves are undone as well
+        if (touched.containsKey(state.parentId)) settle(state.parentId);
+    }
+
+
+    /**
+     * Discards the pending change of a single property: only its entry is restored in the state of its parent.
+     */
+    private void revertProperty(PropertyImpl property) throws InvalidItemStateException {
+        int parentId = property.parent.id;
+        NodeState state = states.get(parentId);
+        if (state == null) throw new InvalidItemStateException("The parent of the property has been removed");
+        NodeState savedParent = saved.states.get(parentId);
+        Object current = getPropertyEntry(states, parentId, property.key);
+        Object savedEntry = savedParent != null ? getPropertyEntry(saved.states, parentId, property.key) : null;
+        if (current == savedEntry) return;
+        references = References.change(references, parentId, property.key, current, savedEntry, owner);
+        if (savedEntry != null)
+            edit(parentId).children.put(property.key, savedEntry);
+        else
+            edit(parentId).children.remove(property.key);
+        if (touched.containsKey(parentId)) settle(parentId);
+    }
+
+
+    /**
+     * Makes the new saved states the saved content of the session, or commits them to the repository.
+     */
+    private void commit(Map<Integer, NodeState> expected, IntTrie<NodeState> newSaved) throws InvalidItemStateException {
+        if (revisions != null) {
+            saved = revisions.commit(expected, newSaved);
+        }
+        else {
+            IntTrie<Referrer[]> newReferences = saved.references;
+            for (Map.Entry<Integer, NodeState> change : expected.entrySet()) {
+                NodeState state = newSaved.get(change.getKey());
+                newReferences = References.update(newReferences, change.getKey(), change.getValue(), state, null);
+            }
+            saved = new Snapshot(newSaved, newReferences, nextId, seed);
+        }
+        owner = new Object(); // the saved states must not be edited in place
+    }
+
+
+    /**
+     * Returns true if the state has the same content as the saved one, so that the node has no pending changes.
+     */
+    private static boolean isUnchanged(@Nullable NodeState state, @Nullable NodeState saved) {
+        if (state == null || saved == null || state.parentId != saved.parentId || state.relative != saved.relative ||
+            !state.name.equals(saved.name) || state.children.size() != saved.children.size()) return false;
+        Iterator<Map.Entry<String, Object>> savedChildren = saved.children.entrySet().iterator();
+        for (Map.Entry<String, Object> child : state.children.entrySet()) {
+            Map.Entry<String, Object> savedChild = savedChildren.next();
+            if (!child.getKey().equals(savedChild.getKey())) return false;
+            Object entry = child.getValue();
+            if (entry != savedChild.getValue() && !(NodeState.isNode(entry) && entry.equals(savedChild.getValue()))) return false;
+        }
+        return true;
     }
 
 
     boolean isNew(ItemImpl item) {
-        return addedItems.contains(item.getPath());
+        if (item.isNode()) return addedItems.contains(((NodeImpl)item).id);
+        PropertyImpl property = (PropertyImpl)item;
+        return getPropertyEntry(property.parent.id, property.key) != null &&
+            getPropertyEntry(saved.states, property.parent.id, property.key) == null;
     }
 
 
+    /**
+     * Properties are compared with their saved entry, since their changes are recorded as changes of their parent.
+     */
     boolean isModified(ItemImpl item) {
-        return changedItems.contains(item.getPath());
+        if (item.isNode()) return changedItems.contains(((NodeImpl)item).id);
+        PropertyImpl property = (PropertyImpl)item;
+        Object entry = getPropertyEntry(property.parent.id, property.key);
+        Object savedEntry = getPropertyEntry(saved.states, property.parent.id, property.key);
+        return entry != null && savedEntry != null && entry != savedEntry;
     }
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr;
+
+import com.twcable.jackalope.impl.common.IntTrie;
+import com.twcable.jackalope.impl.jcr.References.Referrer;
+
+/**
+ * An immutable, point in time copy of the content of a session.
+ * <p/>
+ * Taking a snapshot and starting a new session or repository from it are both O(1): the snapshot shares its item
+ * states with the session it was taken from and with every session forked from it. The states are only copied, one
+ * by one, as the sessions modify them.
+ *
+ * @see SessionImpl#snapshot()
+ * @see SessionImpl#fork()
+ * @see RepositoryImpl#snapshot()
+ * @see RepositoryImpl#fork()
+ */
+public final class Snapshot {
+    final IntTrie<NodeState> states;
+    final IntTrie<Referrer[]> references;
+    final int nextId;
+    final long seed; // of the identifiers, see Identifiers#generate
+
+
+    Snapshot(IntTrie<NodeState> states, IntTrie<Referrer[]> references, int nextId, long seed) {
+        this.states = states;
+        this.references = references;
+        this.nextId = nextId;
+        this.seed = seed;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.jcr.PropertyType;
+
+/**
+ * A STRING value.  Short strings are shared through {@link Interners#STRINGS}, see {@link #valueOf(String)}.
+ */
+final class StringValue extends ValueImpl {
+    private final String value;
+
+
+    StringValue(@Nonnull String value) {
+        super(PropertyType.STRING, null);
+        this.value = value;
+    }
+
+
+    /**
+     * Returns a value for the string, which is the shared instance if the string is short enough to be interned.  A
+     * null string gives a STRING value without content, as {@link ValueImpl#ValueImpl(int, Object)} always did.
+     */
+    @Nonnull
+    static ValueImpl valueOf(@Nullable String value) {
+        if (value == null) return new ValueImpl(PropertyType.STRING, null);
+        StringValue stringValue = new StringValue(value);
+        return value.length() <= Interners.MAX_INTERNED_LENGTH ? Interners.STRINGS.intern(stringValue) : stringValue;
+    }
+
+
+    @Override
+    public String getString() {
+        return value;
+    }
+
+
+    @Override
+    Object getObject() {
+        return value;
+    }
+}
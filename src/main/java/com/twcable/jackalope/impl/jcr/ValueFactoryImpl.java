@@ -35,7 +35,7 @@ public class ValueFactoryImpl implements ValueFactory {
 
     @Override
     public Value createValue(String value) {
-        return new ValueImpl(PropertyType.STRING, value);
+        return StringValue.valueOf(value);
     }
 
 
@@ -45,11 +45,11 @@ public class ValueFactoryImpl implements ValueFactory {
             case PropertyType.STRING:
                 return createValue(value);
             case PropertyType.LONG:
-                return createValue(Long.valueOf(value));
+                return createValue(Long.parseLong(value));
             case PropertyType.DOUBLE:
-                return createValue(Double.valueOf(value));
+                return createValue(Double.parseDouble(value));
             case PropertyType.BOOLEAN:
-                return createValue(Boolean.valueOf(value));
+                return createValue(Boolean.parseBoolean(value));
             case PropertyType.DECIMAL:
                 return createValue(new BigDecimal(value));
             case PropertyType.DATE: // TODO: parse dates
@@ -63,13 +63,13 @@ public class ValueFactoryImpl implements ValueFactory {
 
     @Override
     public Value createValue(long value) {
-        return new ValueImpl(PropertyType.LONG, value);
+        return new LongValue(value);
     }
 
 
     @Override
     public Value createValue(double value) {
-        return new ValueImpl(PropertyType.DOUBLE, value);
+        return new DoubleValue(value);
     }
 
 
@@ -81,13 +81,13 @@ public class ValueFactoryImpl implements ValueFactory {
 
     @Override
     public Value createValue(boolean value) {
-        return new ValueImpl(PropertyType.BOOLEAN, value);
+        return BooleanValue.valueOf(value);
     }
 
 
     @Override
     public Value createValue(Calendar value) {
-        return new ValueImpl(PropertyType.DATE, value);
+        return new DateValue(value);
     }
 
 
@@ -110,24 +110,36 @@ public class ValueFactoryImpl implements ValueFactory {
 
     @Override
     public Value createValue(Node value) throws RepositoryException {
-        return null;
+        return createValue(value, false);
     }
 
 
+    /**
+     * Creates a reference to the node.  The reference holds the UUID of the node, since {@link
+     * NodeImpl#getIdentifier()} returns the path of a node that is not referenceable, which changes when the node is
+     * moved.
+     */
     @Override
     public Value createValue(Node value, boolean weak) throws RepositoryException {
-        return null;
+        String identifier = value instanceof NodeImpl ? ((NodeImpl)value).getUUID() : value.getIdentifier();
+        return new ValueImpl(weak ? PropertyType.WEAKREFERENCE : PropertyType.REFERENCE, identifier);
     }
 
 
     @Override
     public Binary createBinary(InputStream stream) throws RepositoryException {
-        Binary b = new BinaryImpl(stream);
         try {
-            stream.close();
+            return BinaryImpl.create(stream, BinaryImpl.THRESHOLD);
+        }
+        catch (IOException ioe) {
+            throw new RepositoryException(ioe);
+        }
+        finally {
+            try {
+                stream.close();
+            }
+            catch (IOException ioe) { /* ignore */ }
         }
-        catch (IOException ioe) { /* ignore */ }
-        return b;
     }
 
 
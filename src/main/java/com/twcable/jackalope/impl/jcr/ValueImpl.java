@@ -16,6 +16,7 @@
 
 package com.twcable.jackalope.impl.jcr;
 
+import javax.annotation.Nonnull;
 import javax.jcr.Binary;
 import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
@@ -28,6 +29,9 @@ import java.util.Objects;
 
 /**
  * In memory dummy value for testing
+ * <p/>
+ * {@link ValueFactoryImpl} and the typed setters of nodes and properties create the subclasses for strings, longs,
+ * doubles, booleans and dates instead, which keep their value in a field of its own type.
  */
 // TODO: Implement the various conversions
 // TODO: Implement proper calendar getString
@@ -48,6 +52,23 @@ public class ValueImpl implements Value {
     }
 
 
+    /**
+     * Returns a value for the object, of the subclass for its type if there is one.  Short strings are interned.
+     *
+     * @param value The value to be stored
+     * @return The value
+     */
+    @Nonnull
+    public static ValueImpl valueOf(Object value) {
+        return (value instanceof String) ? StringValue.valueOf((String)value) :
+            (value instanceof Long) ? new LongValue((Long)value) :
+                (value instanceof Double) ? new DoubleValue((Double)value) :
+                    (value instanceof Boolean) ? BooleanValue.valueOf((Boolean)value) :
+                        (value instanceof Calendar) ? new DateValue((Calendar)value) :
+                            new ValueImpl(value);
+    }
+
+
     private static int selectPropertyType(Object value) {
         return (value instanceof String) ? PropertyType.STRING :
             (value instanceof Long) ? PropertyType.LONG :
@@ -133,24 +154,33 @@ public class ValueImpl implements Value {
     }
 
 
+    /**
+     * Returns the value as an object.  Values of a specific type store their value as a field of their own instead.
+     */
+    Object getObject() {
+        return valueObject;
+    }
+
+
     @Override
     @SuppressWarnings("SimplifiableIfStatement")
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (!(o instanceof ValueImpl)) return false;
 
         ValueImpl valueImpl = (ValueImpl)o;
 
         if (type != valueImpl.type) return false;
 
-        return Objects.equals(valueObject, valueImpl.valueObject);
+        return Objects.equals(getObject(), valueImpl.getObject());
     }
 
 
     @Override
     public int hashCode() {
         int result = type;
-        result = 31 * result + (valueObject != null ? valueObject.hashCode() : 0);
+        Object value = getObject();
+        result = 31 * result + (value != null ? value.hashCode() : 0);
         return result;
     }
 }
@@ -48,6 +48,7 @@ import java.io.InputStream;
 public class WorkspaceImpl implements Workspace {
     private Session session = null;
     private ObservationManager observationManager = null;
+    private NodeTypeManager nodeTypeManager = null; // only used without a SessionImpl
 
     protected QueryManager queryManager = null;
 
@@ -109,7 +110,9 @@ public class WorkspaceImpl implements Workspace {
 
     @Override
     public NodeTypeManager getNodeTypeManager() throws RepositoryException {
-        return null;
+        if (session instanceof SessionImpl) return ((SessionImpl)session).getNodeTypeManager();
+        if (nodeTypeManager == null) nodeTypeManager = new NodeTypeManagerImpl();
+        return nodeTypeManager;
     }
 
 
@@ -116,7 +116,12 @@ public class NodeResourceImpl extends ItemResourceImpl {
 
     @Override
     public boolean hasChildren() {
-        return listChildren().hasNext();
+        try {
+            return node.hasNodes();
+        }
+        catch (RepositoryException re) {
+            return false;
+        }
     }
 
 
@@ -150,7 +150,7 @@ public class ResourceResolverImpl implements ResourceResolver {
 
     @Override
     public boolean hasChildren(Resource resource) {
-        return listChildren(resource).hasNext();
+        return resource.hasChildren();
     }
 
 
@@ -17,13 +17,47 @@
 package com.twcable.jackalope.impl.sling;
 
 import com.twcable.jackalope.impl.jcr.RepositoryImpl;
+import com.twcable.jackalope.impl.jcr.Snapshot;
 import org.apache.sling.jcr.api.SlingRepository;
 
+import javax.annotation.Nonnull;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 
 public class SlingRepositoryImpl extends RepositoryImpl implements SlingRepository {
 
+    public SlingRepositoryImpl() {
+        super();
+    }
+
+
+    public SlingRepositoryImpl(@Nonnull Mode mode) {
+        super(mode);
+    }
+
+
+    public SlingRepositoryImpl(@Nonnull Snapshot snapshot) {
+        super(snapshot);
+    }
+
+
+    public SlingRepositoryImpl(@Nonnull Snapshot snapshot, @Nonnull Mode mode) {
+        super(snapshot, mode);
+    }
+
+
+    protected SlingRepositoryImpl(@Nonnull SlingRepositoryImpl original) {
+        super(original);
+    }
+
+
+    @Override
+    @Nonnull
+    public SlingRepositoryImpl fork() {
+        return new SlingRepositoryImpl(this);
+    }
+
+
     @Override
     public String getDefaultWorkspace() {
         return null;
@@ -232,6 +232,28 @@ class JCRBuilderSpec extends Specification {
     }
 
 
+    def "PageManager can order pages."() {
+        def repository = repository(node("content",
+            node("page1", CQ_PAGE, node("jcr:content", CQ_PAGE_CONTENT)),
+            node("page2", CQ_PAGE, node("jcr:content", CQ_PAGE_CONTENT)),
+            node("page3", CQ_PAGE, node("jcr:content", CQ_PAGE_CONTENT)))).build()
+        def resolver = new SimpleResourceResolverFactory(repository).resourceResolver
+        def manager = resolver.adaptTo(PageManager)
+
+        when:
+        manager.order(manager.getPage("/content/page3"), "page1")
+
+        then:
+        resolver.getResource("/content").listChildren().collect { it.name } == ["page3", "page1", "page2"]
+
+        when:
+        manager.order(manager.getPage("/content/page3"), null)
+
+        then:
+        resolver.getResource("/content").listChildren().collect { it.name } == ["page1", "page2", "page3"]
+    }
+
+
     def "Build a repository"() {
         def repository = repository(node("node",
             property("prop1", "a"),
@@ -251,4 +273,26 @@ class JCRBuilderSpec extends Specification {
         resource.adaptTo(ValueMap).get("prop2") == "b"
     }
 
+
+    def "A frozen repository builder builds independent copies of the same repository"() {
+        def builder = repository(node("node",
+            property("prop", "a"),
+            node("child"))).freeze()
+
+        when:
+        def first = builder.build()
+        def second = builder.build()
+        first.login().getNode("/node/child").remove()
+        first.login().getNode("/node").setProperty("prop", "b")
+
+        then:
+        !first.is(second)
+        !first.login().nodeExists("/node/child")
+        first.login().getProperty("/node/prop").string == "b"
+        second.login().nodeExists("/node/child")
+        second.login().getProperty("/node/prop").string == "a"
+        builder.build().login().getProperty("/node/prop").string == "a"
+        !second.login().hasPendingChanges()
+    }
+
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.common
+
+import spock.lang.Specification
+import spock.lang.Subject
+
+@Subject(IntTrie)
+class IntTrieSpec extends Specification {
+
+    def "put stores values that get returns"() {
+        def trie = IntTrie.<String> empty()
+        (0..<2000).each { trie = trie.put(it, "v$it".toString(), null) }
+
+        expect:
+        (0..<2000).every { trie.get(it) == "v$it" }
+        trie.get(2000) == null
+        trie.get(-1) == null
+    }
+
+
+    def "put without an owner leaves the original trie untouched"() {
+        def original = IntTrie.<String> empty().put(1, "a", null)
+
+        when:
+        def updated = original.put(1, "b", null).put(40, "c", null).put(1 << 20, "d", null)
+
+        then:
+        original.get(1) == "a"
+        original.get(40) == null
+        original.get(1 << 20) == null
+        updated.get(1) == "b"
+        updated.get(40) == "c"
+        updated.get(1 << 20) == "d"
+    }
+
+
+    def "put with an owner updates the owner's nodes in place, but never shared ones"() {
+        def owner = new Object()
+        def shared = IntTrie.<String> empty().put(1, "a", owner)
+        def other = new Object()
+
+        when:
+        def updated = shared.put(1, "b", other)
+        def again = updated.put(2, "c", other)
+
+        then:
+        shared.get(1) == "a"
+        updated.is(again)
+        again.get(1) == "b"
+        again.get(2) == "c"
+    }
+
+
+    def "putting null removes the key"() {
+        def trie = IntTrie.<String> empty().put(5, "a", null)
+
+        expect:
+        trie.put(5, null, null).get(5) == null
+        trie.put(5000, null, null).is(trie)
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.common
+
+import spock.lang.Specification
+import spock.lang.Subject
+
+@Subject(Interner)
+class InternerSpec extends Specification {
+
+    def "intern returns the first instance of equal objects and counts the hits"() {
+        def interner = new Interner<String>(10)
+        def first = new String("nt:unstructured")
+        def second = new String("nt:unstructured")
+
+        expect:
+        interner.intern(first).is(first)
+        interner.intern(second).is(first)
+        interner.intern(null) == null
+        interner.hits == 1
+        interner.misses == 1
+        interner.hitRate == 0.5d
+    }
+
+
+    def "The interner never holds more than its maximum number of instances"() {
+        def interner = new Interner<String>(10)
+
+        when:
+        (0..<100).each { interner.intern("v$it".toString()) }
+
+        then:
+        interner.size() <= 10
+        interner.misses == 100
+        interner.hits == 0
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.common
+
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Unroll
+
+@Subject(NamePattern)
+class NamePatternSpec extends Specification {
+
+    @Unroll
+    def "'#pattern' matches '#name': #matches"() {
+        expect:
+        NamePattern.compile(pattern).matches(name) == matches
+
+        where:
+        pattern              | name            | matches
+        "jcr:content"        | "jcr:content"   | true
+        "jcr:content"        | "jcr:contents"  | false
+        "jcr:*"              | "jcr:content"   | true
+        "jcr:*"              | "cq:content"    | false
+        "*:content"          | "cq:content"    | true
+        "a*b*c"              | "abc"           | true
+        "a*b*c"              | "axxbyyc"       | true
+        "a*b*c"              | "ac"            | false
+        "ab*ba"              | "aba"           | false
+        "*"                  | "anything"      | true
+        "foo | jcr:* | bar " | "bar"           | true
+        "foo | jcr:* | bar " | "jcr:title"     | true
+        "foo | jcr:* | bar " | "baz"           | false
+    }
+
+
+    def "Patterns are cached, and exact names are kept apart"() {
+        def exact = NamePattern.compile("first | second")
+
+        expect:
+        NamePattern.compile("first | second").is(exact)
+        exact.exact
+        exact.names as List == ["first", "second"]
+        !NamePattern.compile("first | sec*").exact
+        NamePattern.compile("first | sec*").names as List == ["first"]
+    }
+
+
+    def "Globs are not split or trimmed"() {
+        def globs = NamePattern.compile(["a|b", " c"] as String[])
+
+        expect:
+        globs.matches("a|b")
+        globs.matches(" c")
+        !globs.matches("a")
+        !globs.matches("c")
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.common
+
+import spock.lang.Specification
+import spock.lang.Subject
+
+@Subject(OrderedMap)
+class OrderedMapSpec extends Specification {
+    def map = new OrderedMap<String, Integer>()
+
+
+    def setup() {
+        ["a", "b", "c", "d"].eachWithIndex { key, i -> map.put(key, i) }
+    }
+
+
+    def "Entries are kept in the order they were added"() {
+        when:
+        map.put("b", 10)
+        map.remove("c")
+        map.put("c", 20)
+
+        then:
+        map.keySet() as List == ["a", "b", "d", "c"]
+        map.values() as List == [0, 10, 3, 20]
+        map.size() == 4
+        map == [a: 0, b: 10, c: 20, d: 3]
+    }
+
+
+    def "orderBefore moves an entry in front of another one, or to the end"() {
+        when:
+        map.orderBefore("d", "b")
+
+        then:
+        map.keySet() as List == ["a", "d", "b", "c"]
+
+        when:
+        map.orderBefore("a", null)
+
+        then:
+        map.keySet() as List == ["d", "b", "c", "a"]
+
+        when:
+        map.orderBefore("b", "b")
+        map.orderBefore("c", "a")
+
+        then:
+        map.keySet() as List == ["d", "b", "c", "a"]
+    }
+
+
+    def "orderBefore fails for a missing key"() {
+        when:
+        map.orderBefore(key, before)
+
+        then:
+        thrown(NoSuchElementException)
+
+        where:
+        key | before
+        "x" | "a"
+        "a" | "x"
+    }
+
+
+    def "A copy keeps the order, and is independent of the original"() {
+        map.orderBefore("c", "a")
+
+        when:
+        def copy = new OrderedMap<String, Integer>(map)
+        copy.orderBefore("a", "c")
+        copy.remove("b")
+
+        then:
+        copy.keySet() as List == ["a", "c", "d"]
+        map.keySet() as List == ["c", "a", "b", "d"]
+    }
+
+
+    def "Iterating removes entries through the iterator only"() {
+        when:
+        def iterator = map.entrySet().iterator()
+        iterator.next()
+        iterator.remove()
+        iterator.next()
+
+        then:
+        map.keySet() as List == ["b", "c", "d"]
+
+        when:
+        map.remove("d")
+        iterator.next()
+
+        then:
+        thrown(ConcurrentModificationException)
+    }
+
+
+    def "A map keeps its order and its entries as it grows past the size it keeps in an array"() {
+        def keys = (0..<3 * OrderedMap.MAX_ARRAY_SIZE).collect { "k" + it }
+
+        when:
+        keys.eachWithIndex { key, i -> map.put(key, i) }
+        map.orderBefore("k0", "a")
+        map.remove("b")
+        def copy = new OrderedMap<String, Integer>(map)
+        copy.orderBefore("a", null)
+
+        then:
+        map.keySet() as List == ["k0", "a", "c", "d"] + keys.drop(1)
+        map.get("k5") == 5
+        copy.keySet() as List == ["k0", "c", "d"] + keys.drop(1) + ["a"]
+
+        when:
+        map.clear()
+        map.put("x", 1)
+
+        then:
+        map == [x: 1]
+    }
+}
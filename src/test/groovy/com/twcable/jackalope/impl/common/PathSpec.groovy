@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.common
+
+import spock.lang.Specification
+import spock.lang.Subject
+
+@Subject(Path)
+class PathSpec extends Specification {
+
+    def "A parsed path keeps its string form, parent, name and depth"() {
+        def path = Path.of(input)
+
+        expect:
+        path.toString() == input
+        String.valueOf(path.parent) == parent
+        path.name == name
+        path.depth == depth
+        path.absolute == input.startsWith("/")
+
+        where:
+        input    | parent | name | depth
+        "/"      | "null" | ""   | 0
+        ""       | "null" | ""   | 0
+        "/a"     | "/"    | "a"  | 1
+        "a"      | ""     | "a"  | 1
+        "/a/b/c" | "/a/b" | "c"  | 3
+        "a/b"    | "a"    | "b"  | 2
+    }
+
+
+    def "Paths are normalized as they are parsed and resolved"() {
+        expect:
+        Path.of(input).toString() == expected
+        Path.ROOT.resolve(input).toString() == Paths.resolve("/", input)
+
+        where:
+        input       | expected
+        "/a//b/"    | "/a/b"
+        "./a/./b"   | "a/b"
+        "/a/b/../c" | "/a/c"
+        "a/../.."   | ".."
+        "/.."       | "/.."
+    }
+
+
+    def "resolve appends relative paths and replaces the path with absolute ones"() {
+        expect:
+        Path.of(first).resolve(second) == Path.of(expected)
+        Path.of(first).resolve(second).toString() == Paths.resolve(first, second)
+
+        where:
+        first  | second | expected
+        "/"    | "a"    | "/a"
+        "/a"   | "b/c"  | "/a/b/c"
+        "a"    | "b"    | "a/b"
+        "/a"   | "/b"   | "/b"
+        ""     | "a"    | "a"
+    }
+
+
+    def "Equal paths are equal however they were built"() {
+        def built = Path.ROOT.getChild("content").getChild(new String("page"))
+        def parsed = Path.of("/content/page")
+
+        expect:
+        built == parsed
+        built.hashCode() == parsed.hashCode()
+        parsed != Path.of("content/page")
+        parsed != Path.of("/content/other")
+        parsed != Path.of("/content")
+    }
+
+
+    def "Ancestors are found by walking up the parents"() {
+        def path = Path.of("/a/b/c")
+
+        expect:
+        path.getAncestor(0) == Path.ROOT
+        path.getAncestor(2) == Path.of("/a/b")
+        path.getAncestor(3).is(path)
+        Path.of("/a").isAncestorOf(path)
+        Path.ROOT.isAncestorOf(path)
+        !path.isAncestorOf(path)
+        !Path.of("/b").isAncestorOf(path)
+        !Path.of("a").isAncestorOf(Path.of("/a/b"))
+
+        when:
+        path.getAncestor(4)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
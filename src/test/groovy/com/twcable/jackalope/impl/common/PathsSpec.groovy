@@ -168,5 +168,39 @@ class PathsSpec extends Specification {
         "/"        | "segment" | "/segment"
         "/segment" | "next"    | "/segment/next"
         "/segment" | "/next"   | "/next"
+        "/segment" | "./next"  | "/segment/next"
+        "/segment" | "../next" | "/next"
+        "/a/b"     | "c/../.." | "/a"
+        "/segment" | "next/"   | "/segment/next"
+    }
+
+
+    def "normalize drops empty and '.' segments, and '..' segments along with the segment before them"() {
+        expect:
+        Paths.normalize(input) == expected
+
+        where:
+        input          | expected
+        ""             | ""
+        "/"            | "/"
+        "."            | ""
+        "/a/b"         | "/a/b"
+        "a/.b/..c"     | "a/.b/..c"
+        "/a/./b/"      | "/a/b"
+        "/a//b"        | "/a/b"
+        "/a/b/.."      | "/a"
+        "/a/.."        | "/"
+        "a/.."         | ""
+        "../a"         | "../a"
+        "a/../../b"    | "../b"
+        "/../a"        | "/../a"
+    }
+
+
+    def "normalize returns a normal path itself"() {
+        def path = new String("/content/page/jcr:content")
+
+        expect:
+        Paths.normalize(path).is(path)
     }
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr
+
+import org.apache.commons.io.IOUtils
+import spock.lang.Specification
+import spock.lang.Subject
+
+@Subject(BinaryImpl)
+class BinaryImplSpec extends Specification {
+
+    def "Small binaries are kept in memory"() {
+        def binary = BinaryImpl.create(new ByteArrayInputStream("hello, world".bytes), 12)
+
+        expect:
+        !binary.isSpooled()
+        binary.size == 12
+        IOUtils.toString(binary.stream) == "hello, world"
+    }
+
+
+    def "Large binaries are spooled to a file and read back from it"() {
+        def content = (0..<10000).collect { (byte)(it % 251) } as byte[]
+        def binary = BinaryImpl.create(new ByteArrayInputStream(content), 1024)
+        def buffer = new byte[100]
+
+        expect:
+        binary.isSpooled()
+        binary.bytes == null
+        binary.size == 10000
+        IOUtils.toByteArray(binary.stream) == content
+        IOUtils.toByteArray(binary.stream) == content
+
+        binary.read(buffer, 5000) == 100
+        buffer == content[5000..<5100] as byte[]
+        binary.read(buffer, 9950) == 50
+        buffer[0..<50] == content[9950..<10000]
+        binary.read(buffer, 10000) == -1
+    }
+
+
+    def "The value factory spools large streams"() {
+        def content = new byte[BinaryImpl.THRESHOLD + 1]
+        content[BinaryImpl.THRESHOLD] = 42
+
+        when:
+        def binary = new ValueFactoryImpl().createBinary(new ByteArrayInputStream(content)) as BinaryImpl
+
+        then:
+        binary.isSpooled()
+        binary.size == content.length
+        IOUtils.toByteArray(binary.stream) == content
+    }
+}
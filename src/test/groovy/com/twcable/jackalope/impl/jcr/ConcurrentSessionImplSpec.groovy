@@ -0,0 +1,204 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr
+
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Timeout
+import spock.lang.Unroll
+
+import javax.jcr.PathNotFoundException
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+@Subject(SessionImpl)
+@SuppressWarnings("GroovyAccessibility")
+class ConcurrentSessionImplSpec extends Specification {
+
+    def session = new SessionImpl(null, true)
+
+
+    def "A session is only concurrent when asked for"() {
+        expect:
+        session.concurrent
+        !new SessionImpl().concurrent
+        session.fork().concurrent
+        new RepositoryImpl(RepositoryImpl.Mode.CONCURRENT_SESSION).login().concurrent
+        !new RepositoryImpl().login().concurrent
+    }
+
+
+    @Timeout(10)
+    def "Reads do not wait for a change in progress, and do not see it"() {
+        def node = new NodeImpl(session, "/node")
+        node.setProperty("prop", "before")
+        session.save()
+
+        when:
+        session.writeLock.lock() // what a long running change on another thread would hold
+        node.setProperty("prop", "during")
+        def read = Executors.newSingleThreadExecutor().submit({
+            [session.getProperty("/node/prop").string, session.nodeExists("/node")]
+        } as Callable).get(5, TimeUnit.SECONDS)
+
+        then:
+        read == ["before", true]
+
+        cleanup:
+        session.writeLock.unlock()
+    }
+
+
+    @Timeout(60)
+    def "Readers on several threads see consistent content while writers move and change it"() {
+        new NodeImpl(session, "/a").addNode("child").setProperty("prop", "moving")
+        def counter = new NodeImpl(session, "/counter")
+        counter.setProperty("prop", "0")
+        session.save()
+        int readers = Runtime.runtime.availableProcessors()
+        def pool = Executors.newFixedThreadPool(readers + 2)
+        def start = new CountDownLatch(1)
+        def done = new AtomicBoolean(false)
+
+        when:
+        def writers = (0..<2).collect { writer ->
+            pool.submit({
+                start.await()
+                for (int i = 0; i < 2000; i++) {
+                    if (writer == 0)
+                        session.nodeExists("/a") ? session.move("/a", "/b") : session.move("/b", "/a")
+                    else
+                        counter.setProperty("prop", "$i".toString())
+                }
+                null
+            } as Callable)
+        }
+        def readerResults = (0..<readers).collect {
+            pool.submit({
+                start.await()
+                long reads = 0
+                while (!done.get()) {
+                    for (String path : ["/a/child", "/b/child"]) {
+                        try {
+                            def child = session.getNode(path)
+                            assert child.getProperty("prop").string == "moving"
+                            assert child.path.endsWith("/child")
+                            assert session.getProperty("/counter/prop").string.isInteger()
+                            assert child.parent.name in ["a", "b"]
+                            reads++
+                        }
+                        catch (PathNotFoundException ignored) {
+                            // moved away in the meantime
+                        }
+                    }
+                }
+                reads
+            } as Callable)
+        }
+        start.countDown()
+        writers*.get()
+        done.set(true)
+        def reads = readerResults*.get()
+
+        then:
+        reads.every { it > 0 }
+        session.getProperty("/counter/prop").string == "1999"
+
+        cleanup:
+        pool.shutdownNow()
+    }
+
+
+    @Timeout(60)
+    def "Threads that set the same new property at the same time do not clash"() {
+        def node = new NodeImpl(session, "/node")
+        int threads = Math.max(4, Runtime.runtime.availableProcessors())
+        def pool = Executors.newFixedThreadPool(threads)
+
+        when:
+        for (int round = 0; round < 2000; round++) {
+            def start = new CountDownLatch(1)
+            def name = "prop$round".toString()
+            def results = (0..<threads).collect { thread ->
+                pool.submit({
+                    start.await()
+                    node.setProperty(name, "$thread".toString())
+                    null
+                } as Callable)
+            }
+            start.countDown()
+            results*.get()
+        }
+
+        then:
+        node.properties.size == 2000
+        node.getProperty("prop1999").string.isInteger()
+
+        cleanup:
+        pool.shutdownNow()
+    }
+
+
+    /**
+     * Does not assert anything about the time it takes, which depends on the machine; it prints it, so that the
+     * cost of adding a child can be seen to stay the same as the number of children grows, with and without readers
+     * on other threads.
+     */
+    @Unroll
+    @Timeout(120)
+    def "Measure adding #children children while #readers other threads read"() {
+        def parent = new NodeImpl(session, "/parent")
+        session.save()
+        def pool = Executors.newFixedThreadPool(readers + 1)
+        def done = new AtomicBoolean(false)
+        def readerResults = (0..<readers).collect {
+            pool.submit({
+                long reads = 0
+                while (!done.get()) {
+                    session.nodeExists("/parent/child0")
+                    reads++
+                }
+                reads
+            } as Callable)
+        }
+
+        when:
+        long start = System.nanoTime()
+        for (int i = 0; i < children; i++)
+            parent.addNode("child" + i)
+        long millis = (System.nanoTime() - start).intdiv(1000000)
+        done.set(true)
+        long reads = readerResults.sum(0L) { it.get() }
+        println "Adding ${children} children while ${readers} other threads read: ${millis} ms, ${reads} reads"
+
+        then:
+        parent.nodes.size == children
+
+        cleanup:
+        pool.shutdownNow()
+
+        where:
+        children | readers
+        5000     | 0
+        20000    | 0
+        5000     | 2
+        20000    | 2
+    }
+}
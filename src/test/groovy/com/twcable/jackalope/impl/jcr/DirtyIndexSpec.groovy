@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr
+
+import spock.lang.Specification
+import spock.lang.Subject
+
+@Subject(DirtyIndex)
+class DirtyIndexSpec extends Specification {
+    def index = new DirtyIndex()
+
+
+    def "Only the dirty nodes below a node are found"() {
+        // 0 -> 1 -> 2 -> 3, and 0 -> 4
+        index.mark(3)
+        index.link(3, 2)
+        index.link(2, 1)
+        index.link(1, 0)
+        index.mark(4)
+        index.link(4, 0)
+        index.mark(1)
+
+        expect:
+        index.getDirtyIds(0) == [1, 3, 4]
+        index.getDirtyIds(2) == [3]
+        index.getDirtyIds(4) == [4]
+        index.getDirtyIds(5) == []
+    }
+
+
+    def "A node is found below its new parent once it is linked to it"() {
+        index.mark(3)
+        index.link(3, 1)
+        index.link(1, 0)
+
+        when:
+        index.link(3, 2)
+        index.link(2, 0)
+
+        then:
+        index.getDirtyIds(1) == []
+        index.getDirtyIds(2) == [3]
+        index.getDirtyIds(0) == [3]
+    }
+
+
+    def "Links that no longer lead to a dirty node are dropped"() {
+        index.mark(3)
+        index.link(3, 2)
+        index.link(2, 1)
+        index.link(1, 0)
+        index.mark(1)
+
+        when:
+        index.remove(3)
+
+        then:
+        index.getDirtyIds(0) == [1]
+
+        and: "2 was unlinked, while 1 stays linked since it is dirty itself"
+        index.link(2, 1)
+        !index.link(1, 0)
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Measures the heap that a saved node takes, for a few shapes of node.  This does not assert anything, since the
+ * numbers depend on the JVM; it prints them so that changes to the storage can be compared.
+ */
+class HeapPerNodeSpec extends Specification {
+    static final int NODES = 20000
+
+
+    @Unroll
+    def "Measure the heap per node with #properties properties besides its primary type"() {
+        def repository = new RepositoryImpl()
+        def parent = repository.login().rootNode.addNode("content")
+        parent.session.save()
+        long before = usedHeap()
+
+        for (int i = 0; i < NODES; i++) {
+            def node = parent.addNode("node" + i)
+            for (int p = 0; p < properties; p++)
+                node.setProperty("prop" + p, "value")
+        }
+        parent.session.save()
+        long after = usedHeap()
+
+        println "Heap per node with ${properties} properties: ${(after - before) / NODES as long} bytes"
+
+        expect:
+        repository.login().getNode("/content/node0") != null
+
+        where:
+        properties << [0, 1, 10]
+    }
+
+
+    private static long usedHeap() {
+        def runtime = Runtime.runtime
+        long used = Long.MAX_VALUE
+        for (int i = 0; i < 5; i++) {
+            System.gc()
+            Thread.sleep(50)
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory())
+        }
+        return used
+    }
+}
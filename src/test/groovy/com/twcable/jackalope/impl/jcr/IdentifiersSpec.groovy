@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr
+
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Unroll
+
+@Subject(Identifiers)
+class IdentifiersSpec extends Specification {
+
+    @Unroll
+    def "The id of node #id is computed back from its identifier"() {
+        expect:
+        Identifiers.lookup(seed, Identifiers.generate(seed, id)) == id
+
+        where:
+        seed                  | id
+        0L                    | 0
+        42L                   | 1
+        42L                   | 123456
+        -7L                   | Integer.MAX_VALUE
+        0x9E3779B97F4A7C15L   | 1000000
+    }
+
+
+    def "An identifier that was not generated with the seed has no id"() {
+        expect:
+        Identifiers.lookup(42L, Identifiers.generate(43L, 7)) == Identifiers.NOT_FOUND
+        Identifiers.lookup(42L, UUID.randomUUID()) == Identifiers.NOT_FOUND
+        Identifiers.lookup(42L, UUID.nameUUIDFromBytes("node".bytes)) == Identifiers.NOT_FOUND
+    }
+}
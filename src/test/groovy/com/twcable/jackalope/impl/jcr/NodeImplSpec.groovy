@@ -20,7 +20,10 @@ import com.google.common.collect.Lists
 import spock.lang.Specification
 import spock.lang.Subject
 
+import javax.jcr.ItemNotFoundException
 import javax.jcr.Value
+import javax.jcr.nodetype.ConstraintViolationException
+import javax.jcr.nodetype.NoSuchNodeTypeException
 import javax.jcr.nodetype.NodeType
 
 @Subject(NodeImpl)
@@ -126,6 +129,10 @@ class NodeImplSpec extends Specification {
 
         then:
         node.getNode("child").isNodeType(NodeType.NT_FOLDER)
+        node.getNode("child").isNodeType(NodeType.NT_HIERARCHY_NODE)
+        node.getNode("child").isNodeType(NodeType.NT_BASE)
+        !node.getNode("child").isNodeType(NodeType.NT_UNSTRUCTURED)
+        node.getNode("child").primaryNodeType.is(node.getNode("child").primaryNodeType)
     }
 
 
@@ -147,6 +154,32 @@ class NodeImplSpec extends Specification {
     }
 
 
+    def "Child nodes can be reordered"() {
+        def node = new NodeImpl(new SessionImpl(), "/node")
+        ["a", "b", "c"].each { node.addNode(it) }
+        node.session.save()
+
+        when:
+        node.orderBefore("c", "a")
+
+        then:
+        node.nodes*.name == ["c", "a", "b"]
+        node.isModified()
+
+        when:
+        node.orderBefore("c", null)
+
+        then:
+        node.nodes*.name == ["a", "b", "c"]
+
+        when:
+        node.orderBefore("a", "missing")
+
+        then:
+        thrown(ItemNotFoundException)
+    }
+
+
     def "A node can be saved"() {
         when:
         def node = new NodeImpl(new SessionImpl(), "test")
@@ -245,6 +278,28 @@ class NodeImplSpec extends Specification {
     }
 
 
+    def "Saving a node saves the removals below it, and nothing else"() {
+        def session = new SessionImpl()
+        def node = new NodeImpl(session, "/node")
+        node.addNode("a").addNode("b")
+        def other = new NodeImpl(session, "/other")
+        session.save()
+
+        when:
+        session.getNode("/node/a/b").remove()
+        session.getNode("/node/a").setProperty("prop", "x")
+        other.setProperty("prop", "y")
+        node.save()
+        session.refresh(false)
+
+        then:
+        !session.nodeExists("/node/a/b")
+        session.getProperty("/node/a/prop").string == "x"
+        !other.hasProperty("prop")
+        !session.hasPendingChanges()
+    }
+
+
     def "remove() deletes the node from the session"() {
         def session = new SessionImpl()
         def parent = new NodeImpl(session, "parent")
@@ -289,4 +344,377 @@ class NodeImplSpec extends Specification {
         then:
         parent == session.getRootNode()
     }
+
+
+    def "Nodes share their primary type and the names of their properties"() {
+        def session = new SessionImpl()
+        def one = new NodeImpl(session, "/one")
+        def two = new NodeImpl(session, "/two")
+
+        when:
+        one.setPrimaryType(new String("nt:unstructured"))
+        two.setPrimaryType(new String("nt:unstructured"))
+
+        then:
+        one.getProperty("jcr:primaryType").value.is(two.getProperty("jcr:primaryType").value)
+        one.nodeState.children.keySet().find { it == "jcr:primaryType" }.is(two.nodeState.children.keySet().find { it == "jcr:primaryType" })
+    }
+
+
+    def "Mixins can be added to and removed from nodes"() {
+        def node = new NodeImpl(new RepositoryImpl().login(), "/test")
+        node.setPrimaryType(NodeType.NT_UNSTRUCTURED)
+
+        when:
+        node.addMixin("mix:versionable")
+        node.addMixin(NodeType.MIX_REFERENCEABLE) // already there, through mix:versionable
+        node.addMixin("mix:title")
+
+        then:
+        node.mixinNodeTypes*.name == ["mix:versionable", "mix:title"]
+        node.getProperty("jcr:mixinTypes").values*.string == ["mix:versionable", "mix:title"]
+        node.isNodeType("mix:referenceable")
+        node.isNodeType("mix:simpleVersionable")
+        node.isNodeType(NodeType.NT_UNSTRUCTURED)
+        !node.isNodeType("mix:lockable")
+        node.canAddMixin("mix:lockable")
+        !node.canAddMixin(NodeType.NT_FOLDER)
+
+        when:
+        node.removeMixin("mix:versionable")
+
+        then:
+        node.mixinNodeTypes*.name == ["mix:title"]
+        !node.isNodeType("mix:referenceable")
+
+        when:
+        node.removeMixin("mix:title")
+
+        then:
+        node.mixinNodeTypes.length == 0
+        !node.hasProperty("jcr:mixinTypes")
+    }
+
+
+    def "Primary types can not be added as mixins, and only added mixins can be removed"() {
+        def node = new NodeImpl(new RepositoryImpl().login(), "/test")
+
+        when:
+        node.addMixin(NodeType.NT_FOLDER)
+
+        then:
+        thrown(ConstraintViolationException)
+
+        when:
+        node.removeMixin("mix:title")
+
+        then:
+        thrown(NoSuchNodeTypeException)
+    }
+
+
+    def "Resolving the mixin types of a saved node leaves the saved state alone"() {
+        def session = new RepositoryImpl().login()
+        def node = new NodeImpl(session, "/test")
+        node.addMixin("mix:title")
+        session.save()
+        def saved = node.nodeState
+        def cached = saved.mixinTypes
+
+        when:
+        def types = node.mixinNodeTypes
+
+        then:
+        types*.name == ["mix:title"]
+        saved.mixinTypes.is(cached)
+        !node.nodeState.is(saved)
+        !session.hasPendingChanges()
+
+        when:
+        node.setProperty("prop", "changed")
+
+        then:
+        node.modified
+
+        when:
+        session.refresh(false)
+
+        then:
+        !node.hasProperty("prop")
+        node.nodeState.is(saved)
+    }
+
+
+    def "Nodes know the properties that refer to them"() {
+        def session = new RepositoryImpl().login()
+        def root = session.rootNode
+        def target = root.addNode("target")
+        def first = root.addNode("first")
+        def second = root.addNode("second")
+        first.setProperty("link", target)
+        second.setProperty("link", session.valueFactory.createValue(target, true))
+        second.setProperty("other", [session.valueFactory.createValue(target), session.valueFactory.createValue(first)] as Value[])
+        session.save()
+
+        expect:
+        target.references.toList()*.path as Set == ["/first/link", "/second/other"] as Set
+        target.getReferences("other").toList()*.path == ["/second/other"]
+        target.weakReferences.toList()*.path == ["/second/link"]
+        first.references.toList()*.path == ["/second/other"]
+
+        when:
+        session.move("/first", "/second/first")
+        first.getProperty("link").remove()
+        second.remove()
+
+        then:
+        target.references.size == 0
+        target.weakReferences.size == 0
+
+        when:
+        session.refresh(false)
+
+        then:
+        target.references.toList()*.path as Set == ["/first/link", "/second/other"] as Set
+    }
+
+
+    def "Child nodes and properties can be filtered by name"() {
+        def node = new NodeImpl(new SessionImpl(), "/test")
+        ["jcr:content", "first", "second", "third"].each { node.addNode(it) }
+        node.setProperty("jcr:title", "title")
+        node.setProperty("fourth", "value")
+
+        expect:
+        node.getNodes("jcr:*").toList()*.name == ["jcr:content"]
+        node.getNodes("third | first").toList()*.name == ["first", "third"]
+        node.getNodes("*ir* | second").toList()*.name == ["first", "second", "third"]
+        node.getNodes(["s*", "first"] as String[]).toList()*.name == ["first", "second"]
+        node.getNodes("missing").size == 0
+        node.getProperties("jcr:* | fourth").toList()*.name == ["jcr:title", "fourth"]
+        node.getProperties("fourth | first").toList()*.path == ["/test/fourth"]
+        node.getProperties(["*"] as String[]).toList()*.name == ["jcr:title", "fourth"]
+    }
+
+
+    def "Children that match names without wildcards are returned in the order of the children"() {
+        def node = new NodeImpl(new SessionImpl(), "/test")
+        (0..<40).each { node.addNode("child$it") }
+        node.orderBefore("child30", "child0")
+        node.setProperty("b", "value")
+        node.setProperty("a", "value")
+
+        expect:
+        node.getNodes("child5 | child30 | child1 | child5").toList()*.name == ["child30", "child1", "child5"]
+        node.getNodes(["child39", "child0"] as String[]).toList()*.name == ["child0", "child39"]
+        node.getProperties("a | b").toList()*.name == ["b", "a"]
+    }
+
+
+    def "Child iterators are views that can be paged, and that the session can change underneath"() {
+        def session = new SessionImpl()
+        def node = new NodeImpl(session, "/test")
+        (0..<50).each { node.addNode("child$it") }
+        node.setProperty("prop", "value")
+
+        when:
+        def children = node.nodes
+        children.skip(45)
+
+        then:
+        children.size == 50
+        children.position == 45
+        children.toList()*.name == (45..<50).collect { "child$it".toString() }
+
+        when:
+        def removing = node.nodes
+        removing.skip(40)
+        def removed = removing.nextNode()
+        removed.remove()
+        node.getNode("child42").remove()
+        node.addNode("added")
+
+        then:
+        removed.name == "child40"
+        removing.toList()*.name == ["child41", "child43", "child44", "child45", "child46", "child47", "child48", "child49"]
+        node.nodes.size == 49
+        node.properties.toList()*.name == ["prop"]
+        node.hasNodes()
+        node.hasProperties()
+    }
+
+
+    def "A child node iterator skips children that were removed by the time it gets to them"() {
+        def session = new SessionImpl()
+        def node = new NodeImpl(session, "/test")
+        def entries = (0..<4).collect { new AbstractMap.SimpleEntry<String, Object>("child$it".toString(), ((NodeImpl)node.addNode("child$it")).id) }
+
+        when:
+        def children = new ChildNodeIterator(session, entries)
+        children.nextNode()
+        node.getNode("child1").remove()
+        node.getNode("child3").remove()
+
+        then:
+        children.hasNext()
+        children.position == 2
+        children.nextNode().name == "child2"
+        !children.hasNext()
+        children.position == 4
+    }
+
+
+    def "The size of a child iterator agrees with what it iterates over once children have been removed"() {
+        def session = new SessionImpl()
+        def node = new NodeImpl(session, "/test")
+        (0..<10).each { node.addNode("child$it") }
+
+        when:
+        def children = node.nodes
+        node.getNode("child3").remove()
+
+        then:
+        children.size == 9
+        children.toList().size() == 9
+    }
+
+
+    def "Iterating over the children of a node does not make the session copy the states of other nodes"() {
+        def session = new SessionImpl()
+        def node = new NodeImpl(session, "/test")
+        def other = new NodeImpl(session, "/other")
+        node.addNode("child")
+        other.setProperty("prop", "first")
+        def state = other.nodeState
+
+        when:
+        node.nodes.toList()
+        other.setProperty("prop", "second")
+
+        then:
+        other.nodeState.is(state)
+
+        when:
+        def iterated = node.nodeState
+        node.nodes.toList()
+        node.addNode("added")
+
+        then:
+        !node.nodeState.is(iterated)
+        !iterated.children.containsKey("added")
+    }
+
+
+    def "The counts of child nodes and properties follow every change"() {
+        def session = new SessionImpl()
+        def node = new NodeImpl(session, "/test")
+
+        expect:
+        !node.hasNodes()
+        !node.hasProperties()
+        node.nodes.size == 0
+
+        when:
+        node.addNode("first")
+        node.addNode("second")
+        node.setProperty("prop", "value")
+        node.setProperty("other", 1L)
+        session.save()
+
+        then:
+        node.hasNodes()
+        node.hasProperties()
+        node.nodes.size == 2
+        node.properties.size == 2
+
+        when:
+        node.getNode("first").remove()
+        node.setProperty("prop", (String)null)
+        session.move("/test/second", "/moved")
+
+        then:
+        !node.hasNodes()
+        node.hasProperties()
+        node.nodes.size == 0
+        node.properties.size == 1
+        node.properties.toList()*.name == ["other"]
+    }
+
+
+    def "Ancestors and depths follow the parents, also after a move"() {
+        def session = new SessionImpl()
+        def a = new NodeImpl(session, "/a")
+        def b = a.addNode("b")
+        def c = b.addNode("c")
+        def prop = c.setProperty("prop", "value")
+        def other = new NodeImpl(session, "/other")
+
+        expect:
+        c.depth == 3
+        prop.depth == 4
+        prop.getAncestor(0) == session.rootNode
+        prop.getAncestor(2) == b
+        prop.getAncestor(4) == prop
+        c.getAncestor(3) == c
+
+        when:
+        session.move("/a/b", "/other/x")
+        other.addNode("y")
+        session.move("/other/x", "/other/y/x")
+
+        then:
+        c.path == "/other/y/x/c"
+        c.depth == 4
+        prop.depth == 5
+        c.getAncestor(1) == other
+        c.getAncestor(2).path == "/other/y"
+        c.parent == b
+        b.parent.path == "/other/y"
+
+        when:
+        c.getAncestor(5)
+
+        then:
+        thrown(ItemNotFoundException)
+    }
+
+
+    def "Relative paths are walked down from the node"() {
+        def session = new SessionImpl()
+        def node = new NodeImpl(session, "/a")
+        node.addNode("b").addNode("c").setProperty("prop", "value")
+        def relative = new NodeImpl(session, "top")
+        relative.addNode("child")
+
+        expect:
+        node.getNode("b/c").path == "/a/b/c"
+        node.getProperty("b/c/prop").string == "value"
+        node.hasNode("b/c")
+        !node.hasNode("b/missing/c")
+        !node.hasProperty("b/c")
+        session.rootNode.getNode("a/b").path == "/a/b"
+        session.nodeExists("top")
+        !session.rootNode.hasNode("top")
+        relative.getNode("child").path == "top/child"
+        node.addNode("b/c/d").depth == 4
+    }
+
+
+    def "Relative paths can go up from the node"() {
+        def session = new SessionImpl()
+        def node = new NodeImpl(session, "/a")
+        def b = node.addNode("b")
+        node.addNode("sibling").setProperty("prop", "value")
+
+        expect:
+        b.getNode("../sibling").path == "/a/sibling"
+        b.getProperty("../sibling/prop").string == "value"
+        b.getNode(".") == b
+        b.getNode("..") == node
+        b.getNode("./../b") == b
+        node.getNode("b/../sibling/").path == "/a/sibling"
+        !b.hasNode("../../../a")
+        session.getNode("/a/b/../sibling").path == "/a/sibling"
+        b.addNode("../added").path == "/a/added"
+    }
 }
@@ -34,4 +34,32 @@ class NodeTypeImplSpec extends Specification {
         !new NodeTypeImpl("nodetype").isNodeType("nodetypex")
     }
 
+
+    def "NodeType is tested by its supertypes as well"() {
+        def type = new NodeTypeManagerImpl().getNodeType("sling:OrderedFolder")
+
+        expect:
+        type.isNodeType("sling:OrderedFolder")
+        type.isNodeType("sling:Folder")
+        type.isNodeType("nt:folder")
+        type.isNodeType("nt:hierarchyNode")
+        type.isNodeType("mix:created")
+        type.isNodeType("nt:base")
+        !type.isNodeType("nt:file")
+        !type.isNodeType("no:suchType")
+        type.supertypes*.name as Set == ["sling:Folder", "nt:folder", "nt:hierarchyNode", "nt:base", "mix:created"] as Set
+        type.declaredSupertypeNames == ["sling:Folder"] as String[]
+    }
+
+
+    def "Node types that were never registered extend nt:base"() {
+        def type = new NodeTypeImpl("test:unregistered")
+
+        expect:
+        type.isNodeType("nt:base")
+        !type.isMixin()
+        type == new NodeTypeImpl("test:unregistered")
+        type != new NodeTypeImpl("test:other")
+        type.toString() == "test:unregistered"
+    }
 }
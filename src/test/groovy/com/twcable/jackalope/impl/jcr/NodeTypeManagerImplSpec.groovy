@@ -0,0 +1,174 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.jcr
+
+import spock.lang.Specification
+import spock.lang.Subject
+
+import javax.jcr.UnsupportedRepositoryOperationException
+import javax.jcr.nodetype.NoSuchNodeTypeException
+import javax.jcr.nodetype.NodeType
+import javax.jcr.nodetype.NodeTypeDefinition
+import javax.jcr.nodetype.NodeTypeExistsException
+
+import static com.twcable.jackalope.impl.jcr.RepositoryImpl.Mode.SESSION_PER_LOGIN
+
+@Subject(NodeTypeManagerImpl)
+class NodeTypeManagerImplSpec extends Specification {
+
+    def "The workspace has the node types of the spec"() {
+        def manager = new RepositoryImpl().login().workspace.nodeTypeManager
+
+        expect:
+        manager.getNodeType("nt:unstructured").is(manager.getNodeType("nt:unstructured"))
+        manager.hasNodeType("mix:referenceable")
+        manager.getNodeType(NodeType.NT_FOLDER).is(manager.getNodeType("nt:folder"))
+        manager.getNodeType("mix:referenceable").isMixin()
+        manager.getNodeType("nt:base").isAbstract()
+        manager.mixinNodeTypes.toList().every { it.isMixin() }
+        manager.primaryNodeTypes.toList().every { !it.isMixin() }
+        manager.getNodeType("nt:hierarchyNode").declaredSubtypes.toList()*.name.containsAll(["nt:folder", "nt:file"])
+        manager.getNodeType("nt:hierarchyNode").subtypes.toList()*.name.containsAll(["sling:Folder", "cq:Page"])
+    }
+
+
+    def "Looking up a node type that was never registered fails"() {
+        when:
+        new NodeTypeManagerImpl().getNodeType("test:neverRegistered")
+
+        then:
+        thrown(NoSuchNodeTypeException)
+    }
+
+
+    def "Node types can be registered, but not changed or unregistered"() {
+        def manager = new NodeTypeManagerImpl()
+
+        when:
+        def type = manager.registerNodeType(definition("test:registered", "nt:folder"), false)
+
+        then:
+        type.isNodeType("nt:hierarchyNode")
+        manager.getNodeType("test:registered").is(type)
+
+        and: "registering the same definition again is a no-op"
+        manager.registerNodeType(definition("test:registered", "nt:folder"), false).is(type)
+        manager.registerNodeType(definition("test:registered", "nt:folder"), true).is(type)
+
+        when:
+        manager.registerNodeType(definition("test:registered", "nt:file"), false)
+
+        then:
+        thrown(NodeTypeExistsException)
+
+        when:
+        manager.registerNodeType(definition("test:registered", "nt:file"), true)
+
+        then:
+        thrown(UnsupportedRepositoryOperationException)
+
+        when:
+        manager.unregisterNodeType("test:registered")
+
+        then:
+        thrown(UnsupportedRepositoryOperationException)
+    }
+
+
+    def "Every repository has node types of its own, which its sessions and forks share"() {
+        def repository = new RepositoryImpl(SESSION_PER_LOGIN)
+        def manager = repository.login().workspace.nodeTypeManager
+
+        when:
+        manager.registerNodeType(definition("test:perRepository", "nt:folder"), false)
+
+        then:
+        repository.login().workspace.nodeTypeManager.hasNodeType("test:perRepository")
+        repository.fork().login().workspace.nodeTypeManager.hasNodeType("test:perRepository")
+        !new RepositoryImpl().login().workspace.nodeTypeManager.hasNodeType("test:perRepository")
+        !new SessionImpl().workspace.nodeTypeManager.hasNodeType("test:perRepository")
+    }
+
+
+    def "Content with node types that were never registered does not register them"() {
+        def session = new RepositoryImpl().login()
+        def manager = session.workspace.nodeTypeManager
+        def node = new NodeImpl((SessionImpl)session, "/node")
+        node.setPrimaryType("test:unknown")
+
+        expect:
+        node.primaryNodeType.name == "test:unknown"
+        node.isNodeType("test:unknown")
+        node.isNodeType("nt:base")
+        !node.isNodeType("nt:folder")
+        !manager.hasNodeType("test:unknown")
+
+        when:
+        node.addMixin("test:unknownMixin")
+
+        then:
+        thrown(NoSuchNodeTypeException)
+
+        when:
+        manager.registerNodeType(definition("test:unknown", "nt:folder"), false)
+        manager.registerNodeType(mixinDefinition("test:unknownMixin"), false)
+        node.addMixin("test:unknownMixin")
+
+        then:
+        node.isNodeType("nt:hierarchyNode")
+        node.isNodeType("test:unknownMixin")
+        node.mixinNodeTypes*.name == ["test:unknownMixin"]
+    }
+
+
+    def "The resolved primary type is kept in the state of the node"() {
+        def session = new SessionImpl()
+        def node = new NodeImpl(session, "/node")
+        node.setPrimaryType("nt:folder")
+
+        when:
+        def type = node.primaryNodeType
+
+        then:
+        node.nodeState.primaryType.type.is(type)
+        node.isNodeType("nt:hierarchyNode")
+
+        when:
+        node.setPrimaryType("nt:file")
+
+        then:
+        node.primaryNodeType.name == "nt:file"
+        node.nodeState.primaryType.type.name == "nt:file"
+    }
+
+
+    private NodeTypeDefinition mixinDefinition(String name) {
+        Stub(NodeTypeDefinition) {
+            getName() >> name
+            isMixin() >> true
+            getDeclaredSupertypeNames() >> new String[0]
+        }
+    }
+
+
+    private NodeTypeDefinition definition(String name, String supertype) {
+        Stub(NodeTypeDefinition) {
+            getName() >> name
+            getDeclaredSupertypeNames() >> ([supertype] as String[])
+        }
+    }
+}
@@ -19,6 +19,7 @@ package com.twcable.jackalope.impl.jcr
 import spock.lang.Specification
 import spock.lang.Subject
 
+import javax.jcr.ItemNotFoundException
 import javax.jcr.PropertyType
 import javax.jcr.Value
 import javax.jcr.ValueFormatException
@@ -138,4 +139,96 @@ class PropertyImplSpec extends Specification {
         then:
         thrown(ValueFormatException)
     }
+
+
+    def "A property is a view on an entry of its node"() {
+        def node = new NodeImpl(new SessionImpl(), "/node")
+        def property = node.setProperty("prop", "a")
+
+        when:
+        node.getProperty("prop").setValue("b")
+
+        then:
+        node.getProperty("prop") == property
+        property.string == "b"
+        property.parent == node
+        property.path == "/node/prop"
+    }
+
+
+    def "A removed property keeps its last value"() {
+        def node = new NodeImpl(new SessionImpl(), "/node")
+        def property = node.setProperty("prop", "a")
+        property.string
+
+        when:
+        property.remove()
+
+        then:
+        !node.hasProperty("prop")
+        property.string == "a"
+    }
+
+
+    def "Saving a property only saves that property"() {
+        def session = new SessionImpl()
+        def node = new NodeImpl(session, "/node")
+        node.setProperty("a", "1")
+        node.setProperty("b", "1")
+        session.save()
+
+        when:
+        def a = node.setProperty("a", "2")
+        def b = node.setProperty("b", "2")
+
+        then:
+        a.isModified()
+        b.isModified()
+
+        when:
+        a.save()
+
+        then:
+        !a.isModified()
+        b.isModified()
+        session.hasPendingChanges()
+
+        when:
+        b.save()
+
+        then:
+        !b.isModified()
+        !session.hasPendingChanges()
+    }
+
+
+    def "A property can refer to a node by reference or by path"() {
+        def session = new RepositoryImpl().login()
+        def target = session.rootNode.addNode("target")
+        def node = session.rootNode.addNode("node")
+
+        when:
+        node.setProperty("reference", target)
+        node.setProperty("path", "/target")
+        node.setProperty("relative", "target")
+        session.move("/target", "/node/target")
+
+        then:
+        node.getProperty("reference").getNode().is(target)
+        node.getProperty("reference").getNode().path == "/node/target"
+        node.getProperty("relative").getNode().is(target)
+
+        when:
+        node.getProperty("path").getNode()
+
+        then:
+        thrown(ItemNotFoundException)
+
+        when:
+        node.setProperty("number", 1L)
+        node.getProperty("number").getNode()
+
+        then:
+        thrown(ValueFormatException)
+    }
 }
@@ -95,4 +95,47 @@ class RangeIteratorImplSpec extends Specification {
         iterator.position == 7
     }
 
+
+    def "skip does not step through a random access list, and only the elements returned are converted"() {
+        def reads = []
+        def list = new CountingList(size: 100_000, reads: reads)
+        def converted = []
+        def iterator = new RangeIteratorImpl<Integer>(list) {
+            @Override
+            Object convert(Integer element) {
+                converted << element
+                return "e$element".toString()
+            }
+        }
+
+        when:
+        iterator.skip(10_000)
+        def page = (0..<3).collect { iterator.next() }
+
+        then:
+        page == ["e10000", "e10001", "e10002"]
+        reads == [10_000, 10_001, 10_002]
+        converted == [10_000, 10_001, 10_002]
+        iterator.position == 10_003
+        iterator.size == 100_000
+    }
+
+
+    static class CountingList extends AbstractList<Integer> implements RandomAccess {
+        int size
+        List<Integer> reads
+
+
+        @Override
+        Integer get(int index) {
+            reads << index
+            return index
+        }
+
+
+        @Override
+        int size() {
+            return size
+        }
+    }
 }
@@ -20,6 +20,9 @@ import spock.lang.Specification
 import spock.lang.Subject
 
 import javax.jcr.Credentials
+import javax.jcr.InvalidItemStateException
+
+import static com.twcable.jackalope.impl.jcr.RepositoryImpl.Mode.SESSION_PER_LOGIN
 
 @Subject(RepositoryImpl)
 class RepositoryImplSpec extends Specification {
@@ -33,4 +36,162 @@ class RepositoryImplSpec extends Specification {
         repository.login() == repository.login(new Credentials() {}, "test")
     }
 
+
+    def "A forked repository shares nothing observable with its source"() {
+        def repository = new RepositoryImpl()
+        new NodeImpl((SessionImpl)repository.login(), "/node")
+
+        when:
+        def fork = repository.fork()
+        fork.login().getNode("/node").addNode("child")
+
+        then:
+        fork.login() != repository.login()
+        fork.login().nodeExists("/node/child")
+        !repository.login().nodeExists("/node/child")
+    }
+
+
+    def "With a session per login, every login opens its own session"() {
+        def repository = new RepositoryImpl(SESSION_PER_LOGIN)
+
+        expect:
+        !repository.login().is(repository.login())
+        repository.login().rootNode
+    }
+
+
+    def "With a session per login, sessions do not see each other's unsaved changes"() {
+        def repository = new RepositoryImpl(SESSION_PER_LOGIN)
+        def writer = repository.login()
+        def reader = repository.login()
+
+        when:
+        new NodeImpl((SessionImpl)writer, "/node").setProperty("prop", "a")
+
+        then:
+        writer.nodeExists("/node")
+        !reader.nodeExists("/node")
+
+        when:
+        writer.save()
+
+        then: "the reader keeps reading the revision it started from until it refreshes"
+        !reader.nodeExists("/node")
+        repository.login().getProperty("/node/prop").string == "a"
+
+        when:
+        reader.refresh(false)
+
+        then:
+        reader.getProperty("/node/prop").string == "a"
+    }
+
+
+    def "With a session per login, saving a change to an item that another session changed first fails"() {
+        def repository = new RepositoryImpl(SESSION_PER_LOGIN)
+        def setup = repository.login()
+        new NodeImpl((SessionImpl)setup, "/node").setProperty("prop", "a")
+        setup.save()
+        def first = repository.login()
+        def second = repository.login()
+
+        when:
+        first.getNode("/node").setProperty("prop", "first")
+        second.getNode("/node").setProperty("prop", "second")
+        first.save()
+        second.save()
+
+        then:
+        thrown(InvalidItemStateException)
+        second.hasPendingChanges()
+        repository.login().getProperty("/node/prop").string == "first"
+    }
+
+
+    def "With a session per login, a change based on a node that another session changed fails after a partial save"() {
+        def repository = new RepositoryImpl(SESSION_PER_LOGIN)
+        def setup = repository.login()
+        new NodeImpl((SessionImpl)setup, "/n").setProperty("p", "orig")
+        new NodeImpl((SessionImpl)setup, "/m")
+        setup.save()
+        def first = repository.login()
+        first.getNode("/n")
+        def second = repository.login()
+        second.getNode("/n").setProperty("p", "b")
+        second.save()
+
+        when:
+        first.getNode("/m").save()
+        first.getNode("/n").setProperty("q", "a")
+        first.save()
+
+        then:
+        thrown(InvalidItemStateException)
+        repository.login().getProperty("/n/p").string == "b"
+    }
+
+
+    def "With a session per login, changes to different items are both saved"() {
+        def repository = new RepositoryImpl(SESSION_PER_LOGIN)
+        def setup = repository.login()
+        new NodeImpl((SessionImpl)setup, "/a").setProperty("prop", "a")
+        new NodeImpl((SessionImpl)setup, "/b").setProperty("prop", "b")
+        setup.save()
+        def first = repository.login()
+        def second = repository.login()
+
+        when:
+        first.getNode("/a").setProperty("prop", "first")
+        second.getNode("/b").setProperty("prop", "second")
+        second.getNode("/b").remove()
+        first.save()
+        second.save()
+
+        then:
+        repository.login().getProperty("/a/prop").string == "first"
+        !repository.login().nodeExists("/b")
+        second.getProperty("/a/prop").string == "first"
+    }
+
+
+    def "With a session per login, saved nodes can be looked up by their UUID in other sessions"() {
+        def repository = new RepositoryImpl(SESSION_PER_LOGIN)
+        def writer = repository.login()
+        def uuid = new NodeImpl((SessionImpl)writer, "/node").UUID
+        writer.save()
+
+        expect:
+        repository.login().getNodeByUUID(uuid).path == "/node"
+    }
+
+
+    def "With a session per login, a node that another session removed is no longer valid"() {
+        def repository = new RepositoryImpl(SESSION_PER_LOGIN)
+        def setup = repository.login()
+        new NodeImpl((SessionImpl)setup, "/node")
+        new NodeImpl((SessionImpl)setup, "/node/child")
+        setup.save()
+        def reader = repository.login()
+        def child = reader.getNode("/node/child")
+        child.name
+        def writer = repository.login()
+        writer.getNode("/node/child").remove()
+        writer.save()
+
+        when:
+        reader.refresh(false)
+        child.name
+
+        then:
+        thrown(InvalidItemStateException)
+
+        when:
+        child.path
+
+        then:
+        thrown(InvalidItemStateException)
+        !reader.nodeExists("/node/child")
+    }
+
 }
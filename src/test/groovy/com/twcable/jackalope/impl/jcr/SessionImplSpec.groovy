@@ -19,6 +19,10 @@ package com.twcable.jackalope.impl.jcr
 import spock.lang.Specification
 import spock.lang.Subject
 
+import javax.jcr.ItemNotFoundException
+import javax.jcr.RepositoryException
+import javax.jcr.nodetype.ConstraintViolationException
+
 class SessionImplSpec extends Specification {
 
     @Subject
@@ -116,4 +120,506 @@ class SessionImplSpec extends Specification {
         session.nodeExists("/dest/target/child")
     }
 
+
+    def "Children are listed in the order they were added"() {
+        def parent = new NodeImpl(session, "/parent")
+        parent.addNode("b")
+        parent.setProperty("prop", "a")
+        parent.addNode("a")
+        parent.addNode("c")
+
+        expect:
+        session.getChildren(parent)*.name == ["b", "prop", "a", "c"]
+        session.getChildren(session.getRootNode())*.path == ["/parent"]
+    }
+
+
+    def "Moving and removing nodes keeps the child index up to date"() {
+        def dest = new NodeImpl(session, "/dest")
+        def src = new NodeImpl(session, "/src")
+        src.addNode("child").addNode("grandchild")
+
+        when:
+        session.move("/src", "/dest/target")
+
+        then:
+        session.getChildren(session.getRootNode())*.path == ["/dest"]
+        session.getChildren(dest)*.path == ["/dest/target"]
+        session.getChildren(session.getNode("/dest/target")).find { it.isNode() }.path == "/dest/target/child"
+
+        when:
+        session.removeItem("/dest/target")
+
+        then:
+        session.getChildren(dest).isEmpty()
+    }
+
+
+    def "Subtree operations only touch the subtree, not siblings sharing a name prefix"() {
+        new NodeImpl(session, "/dest")
+        def src = new NodeImpl(session, "/src")
+        src.addNode("child")
+        def other = new NodeImpl(session, "/srcother")
+
+        when:
+        src.save()
+
+        then:
+        !src.isNew()
+        other.isNew()
+
+        when:
+        session.move("/src", "/dest/target")
+
+        then:
+        session.nodeExists("/dest/target/child")
+        session.nodeExists("/srcother")
+        !session.nodeExists("/dest/targetother")
+    }
+
+
+    def "Removing a new node discards its pending changes"() {
+        def node = new NodeImpl(session, "/node")
+        node.save()
+
+        when:
+        node.addNode("child").addNode("grandchild")
+        session.removeItem("/node/child")
+        node.save()
+
+        then:
+        !session.hasPendingChanges()
+    }
+
+
+    def "Moving a node relinks it and its descendants derive their new paths"() {
+        def dest = new NodeImpl(session, "/dest")
+        def src = new NodeImpl(session, "/src.(1)+")
+        def grandchild = src.addNode("child").addNode("grandchild")
+        grandchild.setProperty("prop", "a")
+        session.save()
+
+        when:
+        session.move("/src.(1)+", "/dest/target[x]")
+
+        then:
+        grandchild.path == "/dest/target[x]/child/grandchild"
+        grandchild.getProperty("prop").path == "/dest/target[x]/child/grandchild/prop"
+        grandchild.depth == 4
+        session.getNode("/dest/target[x]/child/grandchild") == grandchild
+        !session.nodeExists("/src.(1)+")
+        src.name == "target[x]"
+        src.parent == dest
+        dest.isModified()
+        session.getRootNode().isModified()
+    }
+
+
+    def "A node can not be moved below itself"() {
+        def src = new NodeImpl(session, "/src")
+        src.addNode("child")
+
+        when:
+        session.move("/src", "/src/child/target")
+
+        then:
+        thrown(RepositoryException)
+        session.nodeExists("/src/child")
+    }
+
+
+    def "A forked session starts with the content of its source and evolves independently"() {
+        def node = new NodeImpl(session, "/node")
+        node.setProperty("prop", "original")
+        session.save()
+
+        when:
+        def fork = session.fork()
+        fork.getNode("/node").setProperty("prop", "forked")
+        fork.getNode("/node").addNode("forkChild")
+        node.addNode("sourceChild")
+
+        then:
+        fork.getNode("/node") != node
+        fork.getNode("/node").is(fork.getNode("/node"))
+        fork.getNode("/node").identifier == node.identifier
+        fork.getProperty("/node/prop").string == "forked"
+        session.getProperty("/node/prop").string == "original"
+        fork.nodeExists("/node/forkChild")
+        !fork.nodeExists("/node/sourceChild")
+        session.nodeExists("/node/sourceChild")
+        !session.nodeExists("/node/forkChild")
+    }
+
+
+    def "A snapshot includes unsaved changes, but a fork starts without pending changes"() {
+        new NodeImpl(session, "/node")
+
+        when:
+        def fork = session.fork()
+
+        then:
+        fork.nodeExists("/node")
+        !fork.hasPendingChanges()
+        session.hasPendingChanges()
+    }
+
+
+    def "Removing a node from a fork leaves the source untouched"() {
+        new NodeImpl(session, "/node").addNode("child")
+        def fork = session.fork()
+
+        when:
+        fork.removeItem("/node")
+
+        then:
+        !fork.nodeExists("/node/child")
+        session.nodeExists("/node/child")
+    }
+
+
+    def "refresh(false) discards the pending changes"() {
+        def node = new NodeImpl(session, "/node")
+        node.setProperty("prop", "saved")
+        node.addNode("child")
+        new NodeImpl(session, "/other")
+        session.save()
+
+        when:
+        node.setProperty("prop", "changed")
+        node.addNode("added")
+        session.removeItem("/node/child")
+        session.move("/other", "/node/moved")
+        session.refresh(false)
+
+        then:
+        !session.hasPendingChanges()
+        session.getNode("/node") == node
+        node.getProperty("prop").string == "saved"
+        !session.nodeExists("/node/added")
+        session.nodeExists("/node/child")
+        session.nodeExists("/other")
+        !session.nodeExists("/node/moved")
+        session.getNode("/other").path == "/other"
+    }
+
+
+    def "refresh(true) keeps the pending changes"() {
+        def node = new NodeImpl(session, "/node")
+
+        when:
+        session.refresh(true)
+
+        then:
+        session.hasPendingChanges()
+        session.getNode("/node") == node
+    }
+
+
+    def "Saving the destination of a move without its source fails"() {
+        def a = new NodeImpl(session, "/a")
+        def b = new NodeImpl(session, "/b")
+        a.addNode("x")
+        session.save()
+        session.move("/a/x", "/b/x")
+
+        when:
+        b.save()
+
+        then:
+        thrown(ConstraintViolationException)
+
+        when:
+        a.save()
+
+        then:
+        thrown(ConstraintViolationException)
+
+        when:
+        session.refresh(false)
+
+        then:
+        session.nodeExists("/a/x")
+        !session.nodeExists("/b/x")
+
+        when:
+        session.move("/a/x", "/b/x")
+        session.rootNode.save()
+        session.refresh(false)
+
+        then:
+        !session.nodeExists("/a/x")
+        session.nodeExists("/b/x")
+    }
+
+
+    def "Saving a new node without its new parent fails"() {
+        def parent = new NodeImpl(session, "/parent")
+        def child = parent.addNode("child")
+        def uuid = child.UUID
+
+        when:
+        child.save()
+
+        then:
+        thrown(ConstraintViolationException)
+
+        when:
+        session.refresh(false)
+
+        then:
+        !session.nodeExists("/parent/child")
+
+        when:
+        session.getNodeByUUID(uuid)
+
+        then:
+        thrown(ItemNotFoundException)
+    }
+
+
+    def "refresh(false) keeps what was saved, also when only part of the session was saved"() {
+        def saved = new NodeImpl(session, "/saved")
+        saved.addNode("child")
+        new NodeImpl(session, "/unsaved")
+
+        when:
+        saved.save()
+        session.refresh(false)
+
+        then:
+        session.nodeExists("/saved/child")
+        !session.nodeExists("/unsaved")
+    }
+
+
+    def "Refreshing a node discards the pending changes below it, and nothing else"() {
+        def node = new NodeImpl(session, "/node")
+        node.setProperty("prop", "saved")
+        node.addNode("child").setProperty("prop", "saved")
+        def other = new NodeImpl(session, "/other")
+        session.save()
+
+        when:
+        node.setProperty("prop", "changed")
+        node.getNode("child").setProperty("prop", "changed")
+        def added = node.addNode("added")
+        node.addNode("gone")
+        session.removeItem("/node/gone")
+        other.setProperty("prop", "changed")
+        node.refresh(false)
+
+        then:
+        node.getProperty("prop").string == "saved"
+        session.getProperty("/node/child/prop").string == "saved"
+        !session.nodeExists("/node/added")
+        added.path == "/node/added"
+        !node.modified
+        !node.getNode("child").modified
+        other.modified
+        other.getProperty("prop").string == "changed"
+    }
+
+
+    def "Refreshing a node brings back the children that were removed below it"() {
+        def node = new NodeImpl(session, "/node")
+        node.addNode("child").addNode("grandchild")
+        session.save()
+
+        when:
+        session.removeItem("/node/child")
+        node.refresh(false)
+
+        then:
+        session.nodeExists("/node/child/grandchild")
+        !session.hasPendingChanges()
+    }
+
+
+    def "Refreshing a new node removes just that node"() {
+        def node = new NodeImpl(session, "/node")
+        session.save()
+        def child = node.addNode("child")
+        def uuid = child.UUID
+        node.setProperty("prop", "changed")
+
+        when:
+        child.refresh(false)
+
+        then:
+        !session.nodeExists("/node/child")
+        node.getProperty("prop").string == "changed"
+        node.modified
+
+        when:
+        session.getNodeByUUID(uuid)
+
+        then:
+        thrown(ItemNotFoundException)
+    }
+
+
+    def "Refreshing a property discards only its own change"() {
+        def node = new NodeImpl(session, "/node")
+        node.setProperty("prop", "saved")
+        session.save()
+
+        when:
+        node.setProperty("prop", "changed")
+        node.setProperty("added", "added")
+        node.getProperty("prop").refresh(false)
+
+        then:
+        node.getProperty("prop").string == "saved"
+        node.getProperty("added").string == "added"
+        node.modified
+
+        when:
+        node.getProperty("added").refresh(false)
+
+        then:
+        !node.hasProperty("added")
+        !node.modified
+    }
+
+
+    def "Refreshing the destination of a move without its source fails"() {
+        def a = new NodeImpl(session, "/a")
+        def b = new NodeImpl(session, "/b")
+        a.addNode("x")
+        session.save()
+        session.move("/a/x", "/b/x")
+
+        when:
+        b.refresh(false)
+
+        then:
+        thrown(ConstraintViolationException)
+
+        when:
+        session.rootNode.refresh(false)
+
+        then:
+        session.nodeExists("/a/x")
+        !session.nodeExists("/b/x")
+        !session.hasPendingChanges()
+    }
+
+
+    def "Nodes can be looked up by their UUID, also after they were moved"() {
+        def node = new NodeImpl(session, "/node")
+        def child = node.addNode("child")
+        new NodeImpl(session, "/dest")
+
+        expect:
+        session.getNodeByUUID(child.UUID) == child
+        session.getNodeByIdentifier(child.UUID) == child
+
+        when:
+        session.move("/node", "/dest/node")
+
+        then:
+        session.getNodeByUUID(child.UUID) == child
+        session.getNodeByUUID(child.UUID).path == "/dest/node/child"
+    }
+
+
+    def "Nodes can be looked up by their identifier"() {
+        def child = new NodeImpl(session, "/node").addNode("child")
+
+        expect:
+        session.getNodeByIdentifier(child.identifier) == child
+    }
+
+
+    def "Referenceable nodes are identified by their UUID"() {
+        def child = new NodeImpl(session, "/node").addNode("child")
+        child.addMixin("mix:referenceable")
+
+        expect:
+        child.identifier == child.UUID
+        session.getNodeByIdentifier(child.identifier) == child
+        session.getNode("/node").identifier == "/node"
+    }
+
+
+    def "Removed nodes can not be looked up by their UUID"() {
+        def node = new NodeImpl(session, "/node")
+        def uuid = node.addNode("child").UUID
+        session.save()
+
+        when:
+        node.remove()
+        session.getNodeByUUID(uuid)
+
+        then:
+        thrown(ItemNotFoundException)
+
+        when:
+        session.refresh(false)
+
+        then:
+        session.getNodeByUUID(uuid).path == "/node/child"
+    }
+
+
+    def "Looking up an unknown identifier fails"() {
+        when:
+        session.getNodeByIdentifier(identifier)
+
+        then:
+        thrown(ItemNotFoundException)
+
+        where:
+        identifier << [UUID.randomUUID().toString(), "/unknown"]
+    }
+
+
+    def "A forked session has its own UUID index"() {
+        def node = new NodeImpl(session, "/node")
+        def fork = session.fork()
+        def added = fork.getNode("/node").addNode("added")
+
+        expect:
+        fork.getNodeByUUID(node.UUID).path == "/node"
+        fork.getNodeByUUID(added.UUID) == added
+
+        when:
+        session.getNodeByUUID(added.UUID)
+
+        then:
+        thrown(ItemNotFoundException)
+    }
+
+
+    def "Node UUIDs are unique version 4 UUIDs"() {
+        def root = new NodeImpl(session, "/root")
+        def uuids = (0..<1000).collect { UUID.fromString(root.addNode("n$it").UUID) }
+
+        expect:
+        uuids.unique(false).size() == 1000
+        uuids.every { it.version() == 4 && it.variant() == 2 }
+    }
+
+
+    def "Node UUIDs can be made reproducible with a seed"() {
+        System.setProperty(Identifiers.SEED_PROPERTY, "42")
+
+        when:
+        def first = new NodeImpl(new SessionImpl(), "/node").addNode("child")
+        def second = new NodeImpl(new SessionImpl(), "/node").addNode("child")
+
+        then:
+        first.UUID == second.UUID
+
+        cleanup:
+        System.clearProperty(Identifiers.SEED_PROPERTY)
+    }
+
+
+    def "Node UUIDs differ between repositories by default"() {
+        expect:
+        new NodeImpl(new SessionImpl(), "/node").UUID != new NodeImpl(new SessionImpl(), "/node").UUID
+    }
+
 }
@@ -52,4 +52,13 @@ class ValueFactoryImplSpec extends Specification {
         IOUtils.toString(new ValueFactoryImpl().createValue("hello, world", PropertyType.BINARY).binary.stream) == "hello, world"
     }
 
+
+    def "creates a STRING value for a null string"() {
+        // Groovy can not pick the createValue(String) overload for a null argument on its own
+        def createValue = ValueFactoryImpl.getMethod("createValue", String)
+
+        expect:
+        createValue.invoke(new ValueFactoryImpl(), [null] as Object[]).type == PropertyType.STRING
+    }
+
 }
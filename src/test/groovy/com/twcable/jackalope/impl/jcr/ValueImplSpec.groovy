@@ -17,14 +17,19 @@
 package com.twcable.jackalope.impl.jcr
 
 import org.apache.commons.io.IOUtils
+import spock.lang.Shared
 import spock.lang.Specification
 import spock.lang.Subject
 
 import javax.jcr.PropertyType
+import javax.jcr.ValueFormatException
 
 @Subject(ValueImpl)
 @SuppressWarnings("GrDeprecatedAPIUsage")
 class ValueImplSpec extends Specification {
+    @Shared
+    def now = Calendar.instance
+
 
     def "ValueImpl holds a jcr value"() {
         def factory = new ValueFactoryImpl()
@@ -56,4 +61,53 @@ class ValueImplSpec extends Specification {
         new String(bytes) == "ell"
     }
 
+
+    def "Values of a specific type hold the same value as a ValueImpl"() {
+        expect:
+        value == generic
+        value.hashCode() == generic.hashCode()
+        value.type == generic.type
+        value.string == generic.string
+
+        where:
+        value                      | generic
+        new LongValue(10L)         | new ValueImpl(Long.valueOf(10L))
+        new DoubleValue(2.5d)      | new ValueImpl(Double.valueOf(2.5d))
+        BooleanValue.valueOf(true) | new ValueImpl(Boolean.TRUE)
+        new StringValue("hello")   | new ValueImpl("hello")
+        new DateValue(now)         | new ValueImpl(now)
+    }
+
+
+    def "Values of a specific type compare their primitives"() {
+        expect:
+        new LongValue(10L) == new LongValue(10L)
+        new LongValue(10L) != new LongValue(11L)
+        new LongValue(10L) != new DoubleValue(10d)
+        new DoubleValue(Double.NaN) == new DoubleValue(Double.NaN)
+        new DoubleValue(2.5d).hashCode() == new DoubleValue(2.5d).hashCode()
+        BooleanValue.valueOf(true) != BooleanValue.valueOf(false)
+        new ValueImpl(Long.valueOf(10L)) == new LongValue(10L)
+    }
+
+
+    def "Values of a specific type only convert to their own type"() {
+        when:
+        new LongValue(10L).double
+
+        then:
+        thrown(ValueFormatException)
+    }
+
+
+    def "Short strings are shared, long ones are not"() {
+        def factory = new ValueFactoryImpl()
+        def longString = "x" * (Interners.MAX_INTERNED_LENGTH + 1)
+
+        expect:
+        factory.createValue(new String("cq:Page")).is(factory.createValue(new String("cq:Page")))
+        factory.createValue(new String("cq:Page")).is(ValueImpl.valueOf(new String("cq:Page")))
+        !factory.createValue(longString).is(factory.createValue(longString))
+        factory.createValue(longString) == factory.createValue(longString)
+    }
 }
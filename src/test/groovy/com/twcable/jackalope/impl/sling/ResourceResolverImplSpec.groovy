@@ -126,4 +126,20 @@ class ResourceResolverImplSpec extends Specification {
         resourceResolver.getResource(path) == null
     }
 
+
+    def "Resolves relative resource paths"() {
+        def node = new NodeImpl(session, "/test")
+        node.addNode("child").addNode("grandchild")
+        node.addNode("sibling")
+        def child = resourceResolver.getResource("/test/child")
+
+        expect:
+        resourceResolver.getResource(child, "./grandchild").path == "/test/child/grandchild"
+        resourceResolver.getResource(child, "../sibling").path == "/test/sibling"
+        resourceResolver.getResource(child, "grandchild/../../sibling/").path == "/test/sibling"
+        resourceResolver.getResource(child, "..").path == "/test"
+        resourceResolver.getResource(child, "../../..") == null
+        child.getChild("./grandchild").path == "/test/child/grandchild"
+    }
+
 }
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2015 Time Warner Cable, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.twcable.jackalope.impl.sling
+
+import spock.lang.Specification
+import spock.lang.Subject
+
+import javax.jcr.nodetype.NodeTypeDefinition
+
+import static com.twcable.jackalope.impl.jcr.RepositoryImpl.Mode.SESSION_PER_LOGIN
+
+@Subject(SlingRepositoryImpl)
+class SlingRepositoryImplSpec extends Specification {
+
+    def "A fork keeps the mode, the content and the node types of the repository"() {
+        def repository = new SlingRepositoryImpl(SESSION_PER_LOGIN)
+        def session = repository.login()
+        session.workspace.nodeTypeManager.registerNodeType(Stub(NodeTypeDefinition) {
+            getName() >> "test:folder"
+            getDeclaredSupertypeNames() >> (["nt:folder"] as String[])
+        }, false)
+        session.rootNode.addNode("node", "test:folder")
+        session.save()
+
+        when:
+        def fork = repository.fork()
+        def node = fork.login().getNode("/node")
+
+        then:
+        fork instanceof SlingRepositoryImpl
+        fork.mode == SESSION_PER_LOGIN
+        fork.login().workspace.nodeTypeManager.hasNodeType("test:folder")
+        node.isNodeType("test:folder")
+        node.isNodeType("nt:folder")
+    }
+}